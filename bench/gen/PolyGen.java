@@ -0,0 +1,43 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+//生成poly数据集用的Model.Poly实现类，ant bench-compile时运行，生成的代码不进git
+//接口有很多实现时tag -> 实现类的查找才有意义，所以要64个
+public class PolyGen {
+    private static final int COUNT = 64;
+
+    public static void main(String[] args) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("package cleanXml.bench;\n\n");
+        sb.append("//由bench/gen/PolyGen.java生成，不要手改\n");
+        sb.append("public final class PolyImpls {\n");
+        for (int i = 0; i < COUNT; i++) {
+            String name = String.format("P%02d", i);
+            sb.append("\n");
+            sb.append("    public static class ").append(name).append(" implements Model.Poly {\n");
+            sb.append("        private final int v;\n\n");
+            sb.append("        public ").append(name).append("(int v) {\n");
+            sb.append("            this.v = v;\n");
+            sb.append("        }\n");
+            sb.append("    }\n");
+        }
+
+        sb.append("\n");
+        sb.append("    //i % ").append(COUNT).append(" 决定用哪个实现\n");
+        sb.append("    static Model.Poly poly(int i) {\n");
+        sb.append("        return switch (i % ").append(COUNT).append(") {\n");
+        for (int i = 0; i < COUNT; i++) {
+            sb.append(String.format("            case %d -> new P%02d(i);%n", i, i));
+        }
+        sb.append("            default -> throw new IllegalStateException();\n");
+        sb.append("        };\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+
+        Path file = Path.of(args[0], "cleanXml", "bench", "PolyImpls.java");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, sb, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,44 @@
+package cleanXml.bench;
+
+import cleanXml.DomUtils;
+import cleanXml.XData;
+import cleanXml.XSchema;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+//xml -> object，StAX流式和DOM两条路径
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+    @Param({"shallow", "deep", "wide", "list", "poly"})
+    public String dataset;
+
+    @Param({"1000"})
+    public int size;
+
+    private XSchema schema;
+    private String xml;
+
+    @Setup
+    public void setup() {
+        XData xd = new XData("cleanXml.bench");
+        xd.register(Model.Root.class);
+        schema = xd.compile();
+        xml = schema.toXmlString(Model.dataset(dataset, size));
+    }
+
+    @Benchmark
+    public Object fromXmlString() {
+        return schema.fromXmlString(xml);
+    }
+
+    @Benchmark
+    public Object fromXmlElement() {
+        return schema.fromXmlElement(DomUtils.stringToElement(xml));
+    }
+}
@@ -0,0 +1,47 @@
+package cleanXml.bench;
+
+import cleanXml.DomUtils;
+import cleanXml.XData;
+import cleanXml.XSchema;
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Element;
+
+import java.util.concurrent.TimeUnit;
+
+//object -> xml，流式写和DOM两条路径
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodeBenchmark {
+    @Param({"shallow", "deep", "wide", "list", "poly"})
+    public String dataset;
+
+    @Param({"1000"})
+    public int size;
+
+    private XSchema schema;
+    private Object obj;
+
+    @Setup
+    public void setup() {
+        XData xd = new XData("cleanXml.bench");
+        xd.register(Model.Root.class);
+        schema = xd.compile();
+        obj = Model.dataset(dataset, size);
+    }
+
+    @Benchmark
+    public String toXmlString() {
+        return schema.toXmlString(obj);
+    }
+
+    @Benchmark
+    public String toXmlElement() {
+        Element tmp = DomUtils.newDocument().createElement("tmp");
+        schema.toXmlElement(obj, tmp);
+        return DomUtils.elementToString(DomUtils.getChildElementAssure1(tmp));
+    }
+}
@@ -0,0 +1,187 @@
+package cleanXml.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//benchmark用的数据类型和数据集
+public class Model {
+
+    public interface Node {
+    }
+
+    public static class Leaf implements Node {
+        private final int id;
+        private final float weight;
+        private final boolean active;
+        private final String name;
+
+        public Leaf(int id, float weight, boolean active, String name) {
+            this.id = id;
+            this.weight = weight;
+            this.active = active;
+            this.name = name;
+        }
+    }
+
+    public static class Branch implements Node {
+        private final int depth;
+        private final Node child;
+
+        public Branch(int depth, Node child) {
+            this.depth = depth;
+            this.child = child;
+        }
+    }
+
+    public static class Wide {
+        private final int a0;
+        private final int a1;
+        private final int a2;
+        private final int a3;
+        private final int a4;
+        private final int a5;
+        private final int a6;
+        private final int a7;
+        private final int a8;
+        private final int a9;
+        private final int a10;
+        private final int a11;
+        private final int a12;
+        private final int a13;
+        private final int a14;
+        private final int a15;
+        private final int a16;
+        private final int a17;
+        private final int a18;
+        private final int a19;
+        private final int a20;
+        private final int a21;
+        private final int a22;
+        private final int a23;
+
+        public Wide(int a0, int a1, int a2, int a3, int a4, int a5, int a6, int a7, int a8, int a9, int a10, int a11, int a12, int a13, int a14, int a15, int a16, int a17, int a18, int a19, int a20, int a21, int a22, int a23) {
+            this.a0 = a0;
+            this.a1 = a1;
+            this.a2 = a2;
+            this.a3 = a3;
+            this.a4 = a4;
+            this.a5 = a5;
+            this.a6 = a6;
+            this.a7 = a7;
+            this.a8 = a8;
+            this.a9 = a9;
+            this.a10 = a10;
+            this.a11 = a11;
+            this.a12 = a12;
+            this.a13 = a13;
+            this.a14 = a14;
+            this.a15 = a15;
+            this.a16 = a16;
+            this.a17 = a17;
+            this.a18 = a18;
+            this.a19 = a19;
+            this.a20 = a20;
+            this.a21 = a21;
+            this.a22 = a22;
+            this.a23 = a23;
+        }
+    }
+
+    public static class Items {
+        private final List<Leaf> items;
+
+        public Items(List<Leaf> items) {
+            this.items = items;
+        }
+    }
+
+    public static class Wides {
+        private final List<Wide> wides;
+
+        public Wides(List<Wide> wides) {
+            this.wides = wides;
+        }
+    }
+
+    //实现类P00..P63由bench/gen/PolyGen.java在ant bench-compile时生成，见PolyImpls
+    public interface Poly {
+    }
+
+    public static class Polys {
+        private final List<Poly> polys;
+
+        public Polys(List<Poly> polys) {
+            this.polys = polys;
+        }
+    }
+
+    public static class Root {
+        private final String kind;
+        private final Node node;
+        private final Items items;
+        private final Wides wides;
+        private final Polys polys;
+
+        public Root(String kind, Node node, Items items, Wides wides, Polys polys) {
+            this.kind = kind;
+            this.node = node;
+            this.items = items;
+            this.wides = wides;
+            this.polys = polys;
+        }
+    }
+
+    private static Leaf leaf(int i) {
+        return new Leaf(i, i * 0.5f, (i & 1) == 0, "leaf" + i);
+    }
+
+    private static Wide wide(int seed) {
+        return new Wide(seed + 0, seed + 1, seed + 2, seed + 3, seed + 4, seed + 5, seed + 6, seed + 7, seed + 8, seed + 9, seed + 10, seed + 11, seed + 12, seed + 13, seed + 14, seed + 15, seed + 16, seed + 17, seed + 18, seed + 19, seed + 20, seed + 21, seed + 22, seed + 23);
+    }
+
+    private static Root root(String kind, Node node, List<Leaf> items, List<Wide> wides, List<Poly> polys) {
+        return new Root(kind, node, new Items(items), new Wides(wides), new Polys(polys));
+    }
+
+    //shallow: 少量叶子；deep: 深层嵌套；wide: 很多属性；list: 大列表；poly: 多实现的接口列表
+    public static Root dataset(String name, int size) {
+        switch (name) {
+            case "shallow" -> {
+                List<Leaf> items = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    items.add(leaf(i));
+                }
+                return root(name, leaf(0), items, List.of(), List.of());
+            }
+            case "deep" -> {
+                Node node = leaf(0);
+                for (int i = 0; i < size; i++) {
+                    node = new Branch(i, node);
+                }
+                return root(name, node, List.of(), List.of(), List.of());
+            }
+            case "wide" -> {
+                List<Wide> wides = new ArrayList<>();
+                for (int i = 0; i < size; i++) {
+                    wides.add(wide(i));
+                }
+                return root(name, leaf(0), List.of(), wides, List.of());
+            }
+            case "list" -> {
+                List<Leaf> items = new ArrayList<>();
+                for (int i = 0; i < size; i++) {
+                    items.add(leaf(i));
+                }
+                return root(name, leaf(0), items, List.of(), List.of());
+            }
+            case "poly" -> {
+                List<Poly> polys = new ArrayList<>();
+                for (int i = 0; i < size; i++) {
+                    polys.add(PolyImpls.poly(i));
+                }
+                return root(name, leaf(0), List.of(), List.of(), polys);
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+}
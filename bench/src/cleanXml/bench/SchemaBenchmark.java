@@ -0,0 +1,35 @@
+package cleanXml.bench;
+
+import cleanXml.ClassIndex;
+import cleanXml.PackageScanUtils;
+import cleanXml.XData;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+//启动开销：注册加编译，包扫描
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchemaBenchmark {
+
+    @Benchmark
+    public Object registerAndCompile() {
+        XData xd = new XData("cleanXml.bench");
+        xd.register(Model.Root.class);
+        return xd.compile();
+    }
+
+    @Benchmark
+    public Object packageScan() {
+        return PackageScanUtils.scan("cleanXml.bench", true);
+    }
+
+    @Benchmark
+    public Object classIndexScan() {
+        return ClassIndex.scan("cleanXml.bench");
+    }
+}
@@ -0,0 +1,265 @@
+package cleanXml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+//包下 接口 -> 实现类 的索引
+//扫描时只读class文件头里的父类和接口表，不加载类；只有父类型在包外时才加载那个父类型（不初始化）
+//可以存到文件里，下次启动直接读，不用再扫描
+public class ClassIndex {
+    private static final String HEADER = "#cleanXml class index v3 "; //后面是包名，空格，class文件指纹
+    private static final String END = "#end "; //最后一行，后面是条目数，没有这行说明文件写了一半
+    private static final String HEADER_V2 = "#cleanXml class index v2 "; //没有END，可能不完整，读进来总当作过期
+    private static final String HEADER_V1 = "#cleanXml class index v1 "; //没有指纹，读进来总当作过期
+
+    private final String packageName;
+    private final String fingerprint; //扫描时包下class文件的指纹，v1，v2文件为null
+    private final Map<String, List<String>> implMap; //接口全名 -> 非抽象实现类全名，按扫描顺序
+
+    private ClassIndex(String packageName, String fingerprint, Map<String, List<String>> implMap) {
+        this.packageName = packageName;
+        this.fingerprint = fingerprint;
+        this.implMap = implMap;
+    }
+
+    private static class ClassHeader {
+        int access;
+        String superName;
+        String[] interfaces;
+    }
+
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+
+    public static ClassIndex scan(String packageName) {
+        return scan(packageName, PackageScanUtils.fingerprint(packageName, true));
+    }
+
+    //fingerprint要在扫描前算，扫描中class文件变了下次还会重新扫描
+    private static ClassIndex scan(String packageName, String fingerprint) {
+        Map<String, ClassHeader> headers = new LinkedHashMap<>();
+        PackageScanUtils.forEachClassFile(packageName, true, (className, open) -> {
+            try (InputStream in = open.open()) {
+                ClassHeader header = readHeader(in);
+                if (header != null) {
+                    headers.put(className, header);
+                }
+            }
+        });
+
+        Map<String, Set<String>> allInterfacesCache = new HashMap<>();
+        Map<String, List<String>> implMap = new LinkedHashMap<>();
+        for (Map.Entry<String, ClassHeader> e : headers.entrySet()) {
+            if ((e.getValue().access & (ACC_INTERFACE | ACC_ABSTRACT)) != 0) {
+                continue;
+            }
+            for (String i : allInterfaces(e.getKey(), headers, allInterfacesCache)) {
+                implMap.computeIfAbsent(i, k -> new ArrayList<>()).add(e.getKey());
+            }
+        }
+        return new ClassIndex(packageName, fingerprint, implMap);
+    }
+
+    //文件存在，是这个包的，且class文件没变过就读文件，否则扫描后存到文件
+    //文件读不了，格式不对，不完整都当作过期，重新扫描
+    //指纹只看文件名，大小，修改时间，比扫描读class文件头快得多
+    public static ClassIndex loadOrScan(String packageName, Path file) {
+        String fingerprint = PackageScanUtils.fingerprint(packageName, true);
+        if (Files.exists(file)) {
+            try {
+                ClassIndex index = load(file);
+                if (index.packageName.equals(packageName) && fingerprint.equals(index.fingerprint)) {
+                    return index;
+                }
+            } catch (IllegalArgumentException | UncheckedIOException ignored) {
+            }
+        }
+        ClassIndex index = scan(packageName, fingerprint);
+        index.save(file);
+        return index;
+    }
+
+    //格式不对或不完整时抛IllegalArgumentException
+    public static ClassIndex load(Path file) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        String first = lines.isEmpty() ? "" : lines.get(0);
+        String packageName;
+        String fingerprint = null;
+        boolean hasEnd = false;
+        if (first.startsWith(HEADER)) {
+            String[] parts = first.substring(HEADER.length()).split(" ", 2);
+            packageName = parts[0];
+            fingerprint = parts.length > 1 ? parts[1] : null;
+            hasEnd = true;
+        } else if (first.startsWith(HEADER_V2)) {
+            packageName = first.substring(HEADER_V2.length()).split(" ", 2)[0];
+        } else if (first.startsWith(HEADER_V1)) {
+            packageName = first.substring(HEADER_V1.length());
+        } else {
+            throw new IllegalArgumentException(file + " 不是class索引文件");
+        }
+
+        int last = lines.size();
+        if (hasEnd) {
+            String end = last > 1 ? lines.get(last - 1) : "";
+            if (!end.startsWith(END)) {
+                throw new IllegalArgumentException(file + " class索引文件不完整");
+            }
+            last--;
+        }
+        Map<String, List<String>> implMap = new LinkedHashMap<>();
+        for (String line : lines.subList(1, last)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int idx = line.indexOf('=');
+            if (idx <= 0) {
+                throw new IllegalArgumentException(String.format("%s class索引文件格式不对: %s", file, line));
+            }
+            implMap.put(line.substring(0, idx), List.of(line.substring(idx + 1).split(",")));
+        }
+        if (hasEnd && !lines.get(last).equals(END + implMap.size())) {
+            throw new IllegalArgumentException(file + " class索引文件不完整");
+        }
+        return new ClassIndex(packageName, fingerprint, implMap);
+    }
+
+    //先写同目录下的临时文件再改名替换，进程中途退出或多个进程同时写，都不会留下写了一半的文件
+    public void save(Path file) {
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                writer.write(fingerprint != null ? HEADER + packageName + " " + fingerprint : HEADER + packageName);
+                writer.newLine();
+                for (Map.Entry<String, List<String>> e : implMap.entrySet()) {
+                    writer.write(e.getKey() + "=" + String.join(",", e.getValue()));
+                    writer.newLine();
+                }
+                writer.write(END + implMap.size());
+                writer.newLine();
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    //返回实现类全名，没有返回空列表
+    public List<String> getImplementations(String interfaceName) {
+        return implMap.getOrDefault(interfaceName, List.of());
+    }
+
+    private static Set<String> allInterfaces(String className, Map<String, ClassHeader> headers,
+                                             Map<String, Set<String>> cache) {
+        Set<String> res = cache.get(className);
+        if (res != null) {
+            return res;
+        }
+
+        res = new LinkedHashSet<>();
+        ClassHeader header = headers.get(className);
+        if (header != null) {
+            for (String i : header.interfaces) {
+                res.add(i);
+                res.addAll(allInterfaces(i, headers, cache));
+            }
+            if (header.superName != null) {
+                res.addAll(allInterfaces(header.superName, headers, cache));
+            }
+        } else if (!className.equals("java.lang.Object")) {
+            //包外的类型，加载但不初始化
+            try {
+                Class<?> cls = Class.forName(className, false, Thread.currentThread().getContextClassLoader());
+                for (Class<?> i : ClassUtils.getAllInterfaces(cls)) {
+                    res.add(i.getName());
+                }
+            } catch (ClassNotFoundException | LinkageError ignored) {
+            }
+        }
+        cache.put(className, res);
+        return res;
+    }
+
+    //解析到interfaces表为止，后面的字段，方法都不需要
+    private static ClassHeader readHeader(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != 0xCAFEBABE) {
+            return null;
+        }
+        data.readUnsignedShort(); //minor
+        data.readUnsignedShort(); //major
+
+        int count = data.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classNameIdx = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = data.readUnsignedByte();
+            switch (tag) {
+                case 1 -> utf8[i] = data.readUTF();
+                case 7 -> classNameIdx[i] = data.readUnsignedShort();
+                case 8, 16, 19, 20 -> data.skipNBytes(2);
+                case 15 -> data.skipNBytes(3);
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> data.skipNBytes(4);
+                case 5, 6 -> {
+                    data.skipNBytes(8);
+                    i++; //long和double占2个位置
+                }
+                default -> throw new IOException("未知的常量池类型" + tag);
+            }
+        }
+
+        ClassHeader header = new ClassHeader();
+        header.access = data.readUnsignedShort();
+        data.readUnsignedShort(); //this_class
+        int superIdx = data.readUnsignedShort();
+        header.superName = superIdx == 0 ? null : className(utf8, classNameIdx, superIdx);
+        int interfaceCount = data.readUnsignedShort();
+        header.interfaces = new String[interfaceCount];
+        for (int i = 0; i < interfaceCount; i++) {
+            header.interfaces[i] = className(utf8, classNameIdx, data.readUnsignedShort());
+        }
+        return header;
+    }
+
+    private static String className(String[] utf8, int[] classNameIdx, int classIdx) {
+        return utf8[classNameIdx[classIdx]].replace('/', '.');
+    }
+}
@@ -1,10 +1,25 @@
 package cleanXml;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 
 public class ClassUtils {
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    private static final MethodHandle creatorCreate;
+
+    static {
+        try {
+            creatorCreate = lookup.findVirtual(XMetaProvider.Creator.class, "create",
+                    MethodType.methodType(Object.class, Object[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     public static LinkedHashSet<Class<?>> getAllInterfaces(final Class<?> cls) {
         LinkedHashSet<Class<?>> interfacesFound = new LinkedHashSet<>();
@@ -43,4 +58,32 @@ public class ClassUtils {
         }
         return f;
     }
+
+    //(Object[])Object，参数数组里的原子类型会自动拆箱
+    public static MethodHandle constructorHandle(Constructor<?> constructor) {
+        try {
+            constructor.setAccessible(true);
+            return lookup.unreflectConstructor(constructor)
+                    .asSpreader(Object[].class, constructor.getParameterCount())
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //(Object)valueType，valueType为原子类型时读取不装箱
+    public static MethodHandle getterHandle(Field field, Class<?> valueType) {
+        try {
+            field.setAccessible(true);
+            return lookup.unreflectGetter(field)
+                    .asType(MethodType.methodType(valueType, Object.class));
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //(Object[])Object，调用编译时生成的Creator
+    public static MethodHandle creatorHandle(XMetaProvider.Creator creator) {
+        return creatorCreate.bindTo(creator);
+    }
 }
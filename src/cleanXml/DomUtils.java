@@ -5,20 +5,30 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import java.io.ByteArrayInputStream;
-import java.io.StringWriter;
-import java.nio.charset.StandardCharsets;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
+//DocumentBuilderFactory，TransformerFactory只查找一次，DocumentBuilder，Transformer每个线程复用
 public class DomUtils {
+    private static final DocumentBuilderFactory BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+    private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+    private static final ThreadLocal<DocumentBuilder> BUILDER = ThreadLocal.withInitial(DomUtils::newBuilder);
+    private static final ThreadLocal<Transformer> TRANSFORMER = ThreadLocal.withInitial(DomUtils::newTransformer);
 
     public static List<Element> getChildElements(Element ele) {
         NodeList nodeList = ele.getChildNodes();
@@ -47,11 +57,7 @@ public class DomUtils {
     }
 
     public static Document newDocument() {
-        try {
-            return DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-        } catch (ParserConfigurationException e) {
-            throw new RuntimeException(e);
-        }
+        return BUILDER.get().newDocument(); //不parse，不用reset
     }
 
     public static Element newChild(Element parent, String tag) {
@@ -61,11 +67,49 @@ public class DomUtils {
     }
 
     public static Element stringToElement(String xml) {
-        try {
-            return DocumentBuilderFactory.newInstance()
-                    .newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))
-                    .getDocumentElement();
+        return parse(new InputSource(new StringReader(xml)));
+    }
+
+    //编码按xml声明自动识别
+    public static Element parse(InputStream in) {
+        return parse(new InputSource(in));
+    }
+
+    public static Element parse(Path file) {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            return parse(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //读position到limit之间的字节，不改变buf的position；堆内buffer不复制
+    public static Element parse(ByteBuffer buf) {
+        if (buf.hasArray()) {
+            return parse(new ByteArrayInputStream(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining()));
+        }
+        ByteBuffer b = buf.duplicate();
+        return parse(new InputStream() {
+            @Override
+            public int read() {
+                return b.hasRemaining() ? b.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] dst, int off, int len) {
+                if (!b.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, b.remaining());
+                b.get(dst, off, n);
+                return n;
+            }
+        });
+    }
 
+    private static Element parse(InputSource source) {
+        try {
+            return builder().parse(source).getDocumentElement();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -73,16 +117,44 @@ public class DomUtils {
 
     public static String elementToString(Element ele) {
         try {
-            Transformer transformer = TransformerFactory.newInstance().newTransformer();
-            DOMSource source = new DOMSource(ele);
-            StreamResult result = new StreamResult(new StringWriter());
+            Transformer transformer = TRANSFORMER.get();
+            transformer.reset(); //reset会清掉输出设置，每次重新设
             transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
             transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.transform(source, result);
+            StreamResult result = new StreamResult(new StringWriter());
+            transformer.transform(new DOMSource(ele), result);
 
             return result.getWriter().toString();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
+
+    //每次用前reset，清掉上次parse设置的ErrorHandler，EntityResolver等
+    private static DocumentBuilder builder() {
+        DocumentBuilder builder = BUILDER.get();
+        builder.reset();
+        return builder;
+    }
+
+    //factory不保证线程安全，创建时加锁；创建出来的builder，transformer每个线程一个
+    private static DocumentBuilder newBuilder() {
+        synchronized (BUILDER_FACTORY) {
+            try {
+                return BUILDER_FACTORY.newDocumentBuilder();
+            } catch (ParserConfigurationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static Transformer newTransformer() {
+        synchronized (TRANSFORMER_FACTORY) {
+            try {
+                return TRANSFORMER_FACTORY.newTransformer();
+            } catch (TransformerConfigurationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
 }
@@ -1,11 +1,16 @@
 package cleanXml;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.JarURLConnection;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -16,90 +21,151 @@ public class PackageScanUtils {
     private PackageScanUtils() {
     }
 
+    public interface ClassFileVisitor {
+        //className为全名，open只在需要读取class文件内容时调用
+        void visit(String className, ClassFileOpener open) throws IOException;
+    }
+
+    public interface ClassFileOpener {
+        InputStream open() throws IOException;
+    }
+
     public static Set<Class<?>> scan(String packageName, boolean recursive) {
+        Set<Class<?>> classSet = new LinkedHashSet<>();
+        forEachClassFile(packageName, recursive, (className, open) -> {
+            Class<?> clazz = loadClass(className);
+            if (clazz != null) {
+                classSet.add(clazz);
+            }
+        });
+        return classSet;
+    }
+
+    //只遍历class文件，不加载类
+    //每个根目录或jar单独处理，某个出错不影响其他的，全部遍历完后把出错的抛出来
+    public static void forEachClassFile(String packageName, boolean recursive, ClassFileVisitor visitor) {
         String packageDirName = packageName.replace('.', '/');
-        try {
-            Set<Class<?>> classSet = new LinkedHashSet<>();
-            Enumeration<URL> dirs = Thread.currentThread().getContextClassLoader().getResources(packageDirName);
-            while (dirs.hasMoreElements()) {
-                URL url = dirs.nextElement();
+        UncheckedIOException failed = null;
+        for (URL url : roots(packageDirName)) {
+            try {
                 String protocol = url.getProtocol();
                 if ("file".equals(protocol)) {
                     String filePath = URLDecoder.decode(url.getFile(), StandardCharsets.UTF_8);
 
-                    classSet.addAll(findClassesInPackageByFile(packageName, filePath, recursive));
+                    forEachClassFileInDir(packageName, filePath, recursive, visitor);
                 } else if ("jar".equals(protocol)) {
-                    classSet.addAll(findClassesInPackageByJar(packageName, url, recursive));
+                    forEachClassFileInJar(packageDirName, url, recursive, visitor);
+                }
+            } catch (IOException e) {
+                if (failed == null) {
+                    failed = new UncheckedIOException("扫描包" + packageName + "失败: " + url, e);
+                } else {
+                    failed.addSuppressed(e);
+                }
+            }
+        }
+        if (failed != null) {
+            throw failed;
+        }
+    }
+
+    //包下class文件的指纹：目录里按路径排序的class文件名，大小，修改时间；jar用jar文件本身的大小，修改时间
+    //只看文件属性不读内容，类增删改名后指纹会变
+    public static String fingerprint(String packageName, boolean recursive) {
+        String packageDirName = packageName.replace('.', '/');
+        List<String> items = new ArrayList<>();
+        for (URL url : roots(packageDirName)) {
+            String protocol = url.getProtocol();
+            if ("file".equals(protocol)) {
+                File dir = new File(URLDecoder.decode(url.getFile(), StandardCharsets.UTF_8));
+                List<String> files = new ArrayList<>();
+                collectClassFiles(dir, "", recursive, files);
+                Collections.sort(files);
+                items.add(dir.getAbsolutePath());
+                items.addAll(files);
+            } else if ("jar".equals(protocol)) {
+                try {
+                    URL jarUrl = ((JarURLConnection) url.openConnection()).getJarFileURL();
+                    File jar = new File(URLDecoder.decode(jarUrl.getFile(), StandardCharsets.UTF_8));
+                    items.add(jar.getAbsolutePath() + ":" + jar.length() + ":" + jar.lastModified());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
             }
-            return classSet;
-        } catch (IOException ignored) {
         }
 
-        return Collections.emptySet();
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (String item : items) {
+                md.update(item.getBytes(StandardCharsets.UTF_8));
+                md.update((byte) '\n');
+            }
+            return HexFormat.of().formatHex(md.digest(), 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
-    private static Set<Class<?>> findClassesInPackageByFile(String packageName, String packagePath, boolean recursive) {
-        Set<Class<?>> classSet = new LinkedHashSet<>();
+    private static void collectClassFiles(File dir, String prefix, boolean recursive, List<String> res) {
+        File[] files = dir.listFiles(file -> (recursive && file.isDirectory()) || file.getName().endsWith(".class"));
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    collectClassFiles(file, prefix + file.getName() + "/", recursive, res);
+                } else {
+                    res.add(prefix + file.getName() + ":" + file.length() + ":" + file.lastModified());
+                }
+            }
+        }
+    }
+
+    private static List<URL> roots(String packageDirName) {
+        try {
+            return Collections.list(Thread.currentThread().getContextClassLoader().getResources(packageDirName));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void forEachClassFileInDir(String packageName, String packagePath, boolean recursive,
+                                              ClassFileVisitor visitor) throws IOException {
         File dir = new File(packagePath);
         if (!dir.exists() || !dir.isDirectory()) {
-            return classSet;
+            return;
         }
 
         File[] files = dir.listFiles(file -> (recursive && file.isDirectory()) || file.getName().endsWith(".class"));
         if (files != null) {
             for (File file : files) {
                 if (file.isDirectory()) {
-                    Set<Class<?>> subClassSet = findClassesInPackageByFile(packageName + "." + file.getName(), file.getAbsolutePath(), recursive);
-
-                    classSet.addAll(subClassSet);
+                    forEachClassFileInDir(packageName + "." + file.getName(), file.getAbsolutePath(), recursive, visitor);
                 } else {
                     String className = file.getName().substring(0, file.getName().length() - ".class".length());
-                    Class<?> clazz = loadClass(packageName + "." + className);
-                    if (clazz != null) {
-                        classSet.add(clazz);
-                    }
+                    visitor.visit(packageName + "." + className, () -> new FileInputStream(file));
                 }
             }
         }
-
-        return classSet;
     }
 
-    private static Set<Class<?>> findClassesInPackageByJar(String packageName, URL url, boolean recursive) {
-        Set<Class<?>> classSet = new LinkedHashSet<>();
-        String packageDirName = packageName.replace('.', '/');
-        try {
-            JarFile jar = ((JarURLConnection) url.openConnection()).getJarFile();
-
-            Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                String name = entry.getName();
-                if (name.charAt(0) == '/') {
-                    name = name.substring(1);
-                }
-                if (name.startsWith(packageDirName)) {
-                    int idx = name.lastIndexOf('/');
-                    if (idx != -1) {
-                        packageName = name.substring(0, idx).replace('/', '.');
-                    }
-
-                    if (idx != -1 || recursive) {
-                        if (name.endsWith(".class") && !entry.isDirectory()) {
-                            String className = name.substring(packageName.length() + 1, name.length() - ".class".length());
-                            Class<?> clazz = loadClass(packageName + "." + className);
-                            if (clazz != null) {
-                                classSet.add(clazz);
-                            }
-                        }
-                    }
+    private static void forEachClassFileInJar(String packageDirName, URL url, boolean recursive,
+                                              ClassFileVisitor visitor) throws IOException {
+        JarFile jar = ((JarURLConnection) url.openConnection()).getJarFile();
+
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (name.charAt(0) == '/') {
+                name = name.substring(1);
+            }
+            if (name.startsWith(packageDirName + "/") && name.endsWith(".class") && !entry.isDirectory()) {
+                if (!recursive && name.lastIndexOf('/') != packageDirName.length()) {
+                    continue;
                 }
+                String className = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+                visitor.visit(className, () -> jar.getInputStream(entry));
             }
-        } catch (IOException ignored) {
         }
-
-        return classSet;
     }
 
     private static Class<?> loadClass(String fullClassName) {
@@ -0,0 +1,131 @@
+package cleanXml;
+
+import cleanXml.XData.XClass;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+//多个根对象存在一个文件里，按key取
+//文件：ARCHIVE_MAGIC，个数，索引（key，偏移），后面是XBinaryWriter的格式（类型表 + 所有根对象）
+//打开时用FileChannel.map映射，只读索引和类型表；对象第一次get时才解码，用SoftReference缓存，内存紧张时可回收
+//同一台机器上的多个进程共享page cache；映射大小不能超过2G
+public final class XArchive {
+    private static final int ARCHIVE_MAGIC = 0x43584101; //"CXA" + 版本1
+
+    private final XSchema schema;
+    private final ByteBuffer data; //只读，每次解码用duplicate，线程安全
+    private final XClass[] classes;
+    private final Map<String, Integer> offsetMap; //key -> 对象在data里的位置
+    private final Map<String, SoftReference<Object>> cache = new ConcurrentHashMap<>();
+
+    private XArchive(XSchema schema, ByteBuffer data, XClass[] classes, Map<String, Integer> offsetMap) {
+        this.schema = schema;
+        this.data = data;
+        this.classes = classes;
+        this.offsetMap = offsetMap;
+    }
+
+    //objects按key顺序写，对象都要是注册过的类型
+    public static void write(XSchema schema, Map<String, ?> objects, Path file) {
+        XBinaryWriter writer = new XBinaryWriter(schema);
+        Map<String, Integer> offsetMap = new TreeMap<>();
+        for (Map.Entry<String, ?> e : new TreeMap<>(objects).entrySet()) {
+            offsetMap.put(e.getKey(), writer.bodySize());
+            if (!writer.write(e.getValue())) {
+                throw new IllegalArgumentException(String.format("%s 类型为%s，没有注册", e.getKey(), e.getValue().getClass()));
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(ARCHIVE_MAGIC);
+            out.writeInt(offsetMap.size());
+            for (Map.Entry<String, Integer> e : offsetMap.entrySet()) {
+                byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeInt(e.getValue());
+            }
+            writer.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static XArchive open(XSchema schema, Path file) {
+        MappedByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); //关闭channel后映射仍有效
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (buf.getInt() != ARCHIVE_MAGIC) {
+            throw new IllegalArgumentException(file + " 不是cleanXml archive格式");
+        }
+        int count = buf.getInt();
+        Map<String, Integer> offsetMap = new HashMap<>(count * 2);
+        byte[] keyBuf = new byte[64];
+        for (int i = 0; i < count; i++) {
+            int len = buf.getInt();
+            if (keyBuf.length < len) {
+                keyBuf = new byte[len];
+            }
+            buf.get(keyBuf, 0, len);
+            offsetMap.put(new String(keyBuf, 0, len, StandardCharsets.UTF_8), buf.getInt());
+        }
+
+        XBinaryReader reader = new XBinaryReader(schema, buf);
+        reader.readHeader();
+        ByteBuffer data = buf.slice(); //position之后是所有根对象
+        return new XArchive(schema, data, reader.classes(), offsetMap);
+    }
+
+    public int size() {
+        return offsetMap.size();
+    }
+
+    public boolean contains(String key) {
+        return offsetMap.containsKey(key);
+    }
+
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(offsetMap.keySet());
+    }
+
+    //没有这个key返回null；多个线程同时第一次取同一个key可能各解码一次，结果等价
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key) {
+        SoftReference<Object> ref = cache.get(key);
+        Object obj = ref != null ? ref.get() : null;
+        if (obj != null) {
+            return (T) obj;
+        }
+
+        Integer offset = offsetMap.get(key);
+        if (offset == null) {
+            return null;
+        }
+        ByteBuffer buf = data.duplicate();
+        buf.position(offset);
+        obj = new XBinaryReader(schema, buf, classes).readObject();
+        cache.put(key, new SoftReference<>(obj));
+        return (T) obj;
+    }
+
+    //清掉已解码的缓存，之后get重新从映射里解码
+    public void clearCache() {
+        cache.clear();
+    }
+}
@@ -0,0 +1,132 @@
+package cleanXml;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+//解析线程只把原始数据放进有界队列，不格式化也不做IO；后台线程攒一批格式化好交给sink
+//队列满了或close之后直接丢弃，只计数，解析线程永远不会被日志卡住
+public class XAsyncDiagnostics implements XDiagnostics, Closeable {
+    private static final int MAX_BATCH = 256;
+    private static final long LINGER_MILLIS = 100; //没攒满时最多等这么久就输出
+    private static final String[] END = new String[0]; //close时放进队列，后台线程取到就输出完退出
+
+    private final BlockingQueue<String[]> queue;
+    private final Consumer<List<String>> sink;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    public XAsyncDiagnostics(PrintStream out) {
+        this(lines -> {
+            StringBuilder sb = new StringBuilder();
+            for (String line : lines) {
+                sb.append(line).append(System.lineSeparator());
+            }
+            out.print(sb);
+        }, 8192);
+    }
+
+    //sink在后台线程里调用，每次一批已格式化的行
+    public XAsyncDiagnostics(Consumer<List<String>> sink, int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.sink = sink;
+        thread = new Thread(this::drainLoop, "cleanXml-diagnostics");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void unusedAttr(String tag, String attr, String value) {
+        offer(new String[]{tag, attr, value});
+    }
+
+    @Override
+    public void unusedChild(String tag, String childTag) {
+        offer(new String[]{tag, childTag});
+    }
+
+    @Override
+    public void info(String message) {
+        offer(new String[]{message});
+    }
+
+    private void offer(String[] item) {
+        if (closed || !queue.offer(item)) {
+            dropped.increment();
+            return;
+        }
+        //跟close并发时可能排在END后面，后台线程不会再取，能撤回就算丢弃；撤不回说明后台线程取走了，由它输出或计数
+        if (closed && queue.remove(item)) {
+            dropped.increment();
+        }
+    }
+
+    //队列满或close之后被丢弃的条数
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    //放一个END进队列，后台线程输出完END前面的再返回；不打断后台线程，sink正在做IO也不受影响
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(END);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        List<String[]> items = new ArrayList<>(MAX_BATCH);
+        List<String> lines = new ArrayList<>(MAX_BATCH);
+        boolean end = false;
+        while (!end) {
+            try {
+                String[] first = queue.poll(LINGER_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    items.add(first);
+                    queue.drainTo(items, MAX_BATCH - 1);
+                }
+            } catch (InterruptedException ignored) { //没人打断，只等END
+            }
+
+            for (String[] item : items) {
+                if (end) {
+                    dropped.increment(); //END之后的，offer那边撤不回了，这里计数
+                } else if (item == END) {
+                    end = true;
+                } else {
+                    lines.add(format(item));
+                }
+            }
+            if (!lines.isEmpty()) {
+                try {
+                    sink.accept(lines);
+                } catch (RuntimeException ignored) { //sink出错不能让后台线程退出
+                }
+            }
+            items.clear();
+            lines.clear();
+        }
+    }
+
+    private static String format(String[] item) {
+        return switch (item.length) {
+            case 3 -> String.format("%s[%s] = %s 未使用", item[0], item[1], item[2]);
+            case 2 -> String.format("%s<%s> 未使用", item[0], item[1]);
+            default -> item[0];
+        };
+    }
+}
@@ -0,0 +1,234 @@
+package cleanXml;
+
+import cleanXml.XData.XClass;
+import cleanXml.XData.XClassType;
+import cleanXml.XData.XParam;
+import cleanXml.XData.XType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+//读XBinaryWriter写的格式，从position开始读
+//文件头里的类型表跟当前schema对照：tag要注册过，形参名，类型和顺序要一致，枚举值名和顺序要一致，不一致就要重新生成
+class XBinaryReader {
+    private final XSchema schema;
+    private final ByteBuffer buf;
+    private XClass[] classes;
+    private byte[] strBuf = new byte[64];
+
+    XBinaryReader(XSchema schema, ByteBuffer buf) {
+        this.schema = schema;
+        this.buf = buf;
+    }
+
+    //类型表已经读过，buf定位到某个根对象开始的地方
+    XBinaryReader(XSchema schema, ByteBuffer buf, XClass[] classes) {
+        this.schema = schema;
+        this.buf = buf;
+        this.classes = classes;
+    }
+
+    XClass[] classes() {
+        return classes;
+    }
+
+    Object readRoot() {
+        readHeader();
+        return readObject();
+    }
+
+    void readHeader() {
+        int magic = buf.getInt();
+        if (magic != XBinaryWriter.MAGIC) {
+            if (magic == XBinaryWriter.MAGIC_V1) {
+                throw new IllegalArgumentException("cleanXml二进制格式版本1，需要重新生成");
+            }
+            throw new IllegalArgumentException("不是cleanXml二进制格式");
+        }
+        int count = readVarint();
+        classes = new XClass[count];
+        for (int i = 0; i < count; i++) {
+            String tag = readString();
+            XClass xClass = schema.getXClassByTag(tag);
+            if (xClass == null) {
+                throw new IllegalArgumentException(String.format("二进制里的%s 没有注册", tag));
+            }
+            int kind = readVarint();
+            if (kind != (xClass.needDom ? XBinaryWriter.KIND_XML : XBinaryWriter.KIND_PARAMS)) {
+                throw new IllegalArgumentException(String.format("二进制里的%s converter设置跟schema不一致，需要重新生成", tag));
+            }
+            if (kind == XBinaryWriter.KIND_PARAMS) {
+                int paramCount = readVarint();
+                if (paramCount != xClass.xParamList.size()) {
+                    throw new IllegalArgumentException(String.format("二进制里的%s 形参跟schema不一致，需要重新生成", tag));
+                }
+                for (int j = 0; j < paramCount; j++) {
+                    checkParam(tag, xClass.xParamList.get(j));
+                }
+            }
+            classes[i] = xClass;
+        }
+    }
+
+    Object readObject() {
+        int id = readVarint();
+        if (id == 0) {
+            return null;
+        }
+        XClass xClass = classes[id - 1];
+        if (xClass.needDom) {
+            return schema.fromXmlElementAssure(DomUtils.stringToElement(readString()));
+        }
+
+        Object[] params = new Object[xClass.xParamList.size()];
+        for (int i = 0; i < params.length; i++) {
+            XParam xParam = xClass.xParamList.get(i);
+            params[i] = switch (xParam.xType) {
+                case INT -> unzigzag(readVarint());
+                case LONG -> unzigzag(readVarlong());
+                case FLOAT -> buf.getFloat();
+                case DOUBLE -> buf.getDouble();
+                case SHORT -> (short) unzigzag(readVarint());
+                case BYTE -> (byte) unzigzag(readVarint());
+                case CHAR -> (char) readVarint();
+                case BOOL -> buf.get() != 0;
+                case STR -> readNullableString();
+                case ARRAY -> readArray(xParam);
+                case VALUE_LIST -> {
+                    Object arr = readArray(xParam);
+                    yield arr == null ? null : XParam.toList(arr);
+                }
+                case CLASS -> {
+                    if (xParam.xClass.xClassType == XClassType.ENUM) {
+                        int ordinal = readVarint();
+                        yield ordinal == 0 ? null : xParam.xClass.xEnumObjList.get(ordinal - 1);
+                    }
+                    yield readObject();
+                }
+                case LIST -> {
+                    int size = readVarint();
+                    List<Object> list = new ArrayList<>(size);
+                    for (int j = 0; j < size; j++) {
+                        list.add(readObject());
+                    }
+                    yield list;
+                }
+            };
+        }
+        return xClass.newInstance(params);
+    }
+
+    //形参名，类型，元素类型，引用的类型都要一样；枚举按ordinal存，值的名字和顺序也要一样
+    private void checkParam(String tag, XParam xParam) {
+        String attr = readString();
+        int xType = readVarint();
+        int elementType = readVarint();
+        String classTag = readNullableString();
+        boolean same = xParam.attr().equals(attr) &&
+                xType == xParam.xType.ordinal() &&
+                elementType == (xParam.elementType == null ? 0 : xParam.elementType.ordinal() + 1) &&
+                Objects.equals(classTag, xParam.xClass == null ? null : xParam.xClass.tag());
+        if (!same) {
+            throw new IllegalArgumentException(String.format("二进制里的%s.%s 形参跟schema不一致，需要重新生成", tag, attr));
+        }
+
+        List<Object> enumObjs = xParam.xType == XType.CLASS && xParam.xClass.xClassType == XClassType.ENUM ?
+                xParam.xClass.xEnumObjList : List.of();
+        int enumCount = readVarint();
+        boolean sameEnum = enumCount == enumObjs.size();
+        for (int k = 0; k < enumCount; k++) {
+            String enumName = readString();
+            sameEnum = sameEnum && enumObjs.get(k).toString().equals(enumName);
+        }
+        if (!sameEnum) {
+            throw new IllegalArgumentException(String.format("二进制里的%s.%s 枚举值跟schema不一致，需要重新生成", tag, attr));
+        }
+    }
+
+    private Object readArray(XParam xParam) {
+        int len = readVarint();
+        if (len == 0) {
+            return null;
+        }
+        int size = len - 1;
+        Object arr = xParam.newArray(size);
+        switch (xParam.elementType) {
+            case INT -> {
+                int[] a = (int[]) arr;
+                for (int i = 0; i < size; i++) {
+                    a[i] = unzigzag(readVarint());
+                }
+            }
+            case LONG -> {
+                long[] a = (long[]) arr;
+                for (int i = 0; i < size; i++) {
+                    a[i] = unzigzag(readVarlong());
+                }
+            }
+            case FLOAT -> { //整块复制，asFloatBuffer不移动position
+                buf.asFloatBuffer().get((float[]) arr);
+                buf.position(buf.position() + size * 4);
+            }
+            case DOUBLE -> {
+                buf.asDoubleBuffer().get((double[]) arr);
+                buf.position(buf.position() + size * 8);
+            }
+        }
+        return arr;
+    }
+
+    private static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private long readVarlong() {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buf.get();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return v;
+            }
+        }
+    }
+
+    private int readVarint() {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buf.get();
+            v |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return v;
+            }
+        }
+    }
+
+    private String readString() {
+        return readUtf8(readVarint());
+    }
+
+    private String readNullableString() {
+        int len = readVarint();
+        return len == 0 ? null : readUtf8(len - 1);
+    }
+
+    private String readUtf8(int len) {
+        if (buf.hasArray()) {
+            int start = buf.arrayOffset() + buf.position();
+            buf.position(buf.position() + len);
+            return new String(buf.array(), start, len, StandardCharsets.UTF_8);
+        }
+        if (strBuf.length < len) {
+            strBuf = new byte[Math.max(len, strBuf.length * 2)];
+        }
+        buf.get(strBuf, 0, len);
+        return new String(strBuf, 0, len, StandardCharsets.UTF_8);
+    }
+}
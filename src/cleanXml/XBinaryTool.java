@@ -0,0 +1,26 @@
+package cleanXml;
+
+import java.nio.file.Path;
+
+//xml和二进制互转的命令行工具，需要把定义类型的类放在classpath里
+//java cleanXml.XBinaryTool <scanPkg> <根类型全名> <输入文件> <输出文件>
+//输入文件以.xml结尾就转成二进制，否则转成xml
+public class XBinaryTool {
+
+    public static void main(String[] args) throws ClassNotFoundException {
+        if (args.length != 4) {
+            System.out.println("usage: XBinaryTool <scanPkg> <rootClass> <in> <out>");
+            return;
+        }
+
+        XData xd = new XData(args[0]);
+        xd.register(Class.forName(args[1], true, Thread.currentThread().getContextClassLoader()));
+        Path in = Path.of(args[2]);
+        Path out = Path.of(args[3]);
+        if (in.getFileName().toString().endsWith(".xml")) {
+            xd.xmlToBinary(in, out);
+        } else {
+            xd.binaryToXml(in, out);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package cleanXml;
+
+import cleanXml.XData.XClass;
+import cleanXml.XData.XClassType;
+import cleanXml.XData.XParam;
+import cleanXml.XData.XType;
+import org.w3c.dom.Element;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+//二进制格式，按XClass.xParamList顺序写形参值，不写属性名和tag
+//文件头：MAGIC，类型表（tag，每个形参的名字，xType，elementType，引用类型的tag，枚举值名列表），后面对象里用类型表序号代替tag
+//枚举值写 ordinal+1，0表示null；读时按文件头检查枚举值没变过
+//整数用zigzag varint，char用varint，float/double直接写4/8字节，字符串和列表先写长度；对象先写 类型序号+1，0表示null
+//有converter的类型，converter只认DOM，这个对象存成xml字符串
+class XBinaryWriter {
+    static final int MAGIC = 0x43584202; //"CXB" + 版本2，版本1枚举写的是名字
+    static final int MAGIC_V1 = 0x43584201;
+    static final int KIND_PARAMS = 0;
+    static final int KIND_XML = 1;
+
+    private final XSchema schema;
+    private final Map<XClass, Integer> classIds = new IdentityHashMap<>();
+    private final List<XClass> classes = new ArrayList<>();
+    private final Bytes body = new Bytes();
+
+    XBinaryWriter(XSchema schema) {
+        this.schema = schema;
+    }
+
+    //返回是否成功，跟XSchema.toXmlElement一样；可以写多个根对象，共用一个类型表
+    boolean write(Object obj) {
+        return writeObject(obj);
+    }
+
+    //已写的对象字节数，下一个根对象从这里开始
+    int bodySize() {
+        return body.pos;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        Bytes header = new Bytes();
+        header.writeInt(MAGIC);
+        header.writeVarint(classes.size());
+        for (XClass xClass : classes) {
+            header.writeString(xClass.tag());
+            if (xClass.needDom) {
+                header.writeVarint(KIND_XML);
+            } else {
+                header.writeVarint(KIND_PARAMS);
+                header.writeVarint(xClass.xParamList.size());
+                for (XParam xParam : xClass.xParamList) {
+                    header.writeString(xParam.attr());
+                    header.writeVarint(xParam.xType.ordinal());
+                    header.writeVarint(xParam.elementType == null ? 0 : xParam.elementType.ordinal() + 1);
+                    header.writeNullableString(xParam.xClass == null ? null : xParam.xClass.tag());
+                    if (xParam.xType == XType.CLASS && xParam.xClass.xClassType == XClassType.ENUM) {
+                        List<Object> enumObjs = xParam.xClass.xEnumObjList;
+                        header.writeVarint(enumObjs.size());
+                        for (Object enumObj : enumObjs) {
+                            header.writeString(enumObj.toString());
+                        }
+                    } else {
+                        header.writeVarint(0);
+                    }
+                }
+            }
+        }
+        out.write(header.buf, 0, header.pos);
+        out.write(body.buf, 0, body.pos);
+    }
+
+    private int classId(XClass xClass) {
+        Integer id = classIds.get(xClass);
+        if (id == null) {
+            id = classes.size();
+            classIds.put(xClass, id);
+            classes.add(xClass);
+        }
+        return id;
+    }
+
+    private boolean writeObject(Object obj) {
+        XClass xClass = schema.getXClass(obj.getClass());
+        if (xClass == null) {
+            return false;
+        }
+
+        if (xClass.needDom) {
+            Element tmp = DomUtils.newDocument().createElement("tmp");
+            if (!schema.toXmlElement(obj, tmp)) {
+                return false;
+            }
+            body.writeVarint(classId(xClass) + 1);
+            body.writeString(DomUtils.elementToString(DomUtils.getChildElementAssure1(tmp)));
+            return true;
+        }
+
+        body.writeVarint(classId(xClass) + 1);
+        for (XParam xParam : xClass.xParamList) {
+            String attr = xParam.attr();
+            switch (xParam.xType) {
+                case INT, LONG, FLOAT, DOUBLE, SHORT, BYTE, CHAR, BOOL -> writePrimitive(xParam, obj);
+                case STR -> {
+                    Object v = xParam.get(obj);
+                    require(v != null || xParam.nullable(), xClass, attr);
+                    body.writeNullableString(v == null ? null : v.toString());
+                }
+                case ARRAY, VALUE_LIST -> {
+                    Object v = xParam.get(obj);
+                    require(v != null || xParam.nullable(), xClass, attr);
+                    writeValues(xParam, v);
+                }
+                case CLASS -> {
+                    Object v = xParam.get(obj);
+                    if (v == null) {
+                        require(xParam.nullable(), xClass, attr);
+                        body.writeVarint(0);
+                    } else if (xParam.xClass.xClassType == XClassType.ENUM) {
+                        body.writeVarint(((Enum<?>) v).ordinal() + 1);
+                    } else if (!writeObject(v)) {
+                        throw new IllegalArgumentException(String.format("%s.%s 类型为%s, 生成二进制失败", xClass.name, attr, v.getClass()));
+                    }
+                }
+                case LIST -> {
+                    List<?> list = (List<?>) xParam.get(obj);
+                    body.writeVarint(list.size());
+                    for (Object o : list) {
+                        if (!writeObject(o)) {
+                            throw new IllegalArgumentException(String.format("%s.%s 中元素类型为%s, 生成二进制失败", xClass.name, attr, o.getClass()));
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private void writePrimitive(XParam xParam, Object obj) {
+        try {
+            switch (xParam.xType) {
+                case INT -> body.writeVarint(zigzag(xParam.getInt(obj)));
+                case LONG -> body.writeVarlong(zigzag(xParam.getLong(obj)));
+                case FLOAT -> body.writeInt(Float.floatToRawIntBits(xParam.getFloat(obj)));
+                case DOUBLE -> body.writeLong(Double.doubleToRawLongBits(xParam.getDouble(obj)));
+                case SHORT -> body.writeVarint(zigzag(xParam.getShort(obj)));
+                case BYTE -> body.writeVarint(zigzag(xParam.getByte(obj)));
+                case CHAR -> body.writeVarint(xParam.getChar(obj));
+                case BOOL -> body.writeByte(xParam.getBoolean(obj) ? 1 : 0);
+                default -> throw new IllegalStateException(xParam.xType + " 不是原子类型");
+            }
+        } catch (Throwable e) {
+            throw XData.rethrow(e);
+        }
+    }
+
+    //长度+1，0表示null，元素编码同单个的原子类型
+    private void writeValues(XParam xParam, Object v) {
+        if (v == null) {
+            body.writeVarint(0);
+            return;
+        }
+        if (xParam.xType == XType.VALUE_LIST) {
+            List<?> list = (List<?>) v;
+            body.writeVarint(list.size() + 1);
+            for (Object e : list) {
+                switch (xParam.elementType) {
+                    case INT -> body.writeVarint(zigzag((int) (Integer) e));
+                    case LONG -> body.writeVarlong(zigzag((long) (Long) e));
+                    case FLOAT -> body.writeInt(Float.floatToRawIntBits((Float) e));
+                    case DOUBLE -> body.writeLong(Double.doubleToRawLongBits((Double) e));
+                }
+            }
+            return;
+        }
+
+        switch (xParam.elementType) {
+            case INT -> {
+                int[] a = (int[]) v;
+                body.writeVarint(a.length + 1);
+                for (int e : a) {
+                    body.writeVarint(zigzag(e));
+                }
+            }
+            case LONG -> {
+                long[] a = (long[]) v;
+                body.writeVarint(a.length + 1);
+                for (long e : a) {
+                    body.writeVarlong(zigzag(e));
+                }
+            }
+            case FLOAT -> {
+                float[] a = (float[]) v;
+                body.writeVarint(a.length + 1);
+                for (float e : a) {
+                    body.writeInt(Float.floatToRawIntBits(e));
+                }
+            }
+            case DOUBLE -> {
+                double[] a = (double[]) v;
+                body.writeVarint(a.length + 1);
+                for (double e : a) {
+                    body.writeLong(Double.doubleToRawLongBits(e));
+                }
+            }
+        }
+    }
+
+    private static void require(boolean ok, XClass xClass, String attr) {
+        if (!ok) {
+            throw new IllegalArgumentException(String.format("%s.%s需要不为null", xClass.name, attr));
+        }
+    }
+
+    static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static class Bytes {
+        byte[] buf = new byte[256];
+        int pos;
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeInt(int v) {
+            ensure(4);
+            buf[pos++] = (byte) (v >>> 24);
+            buf[pos++] = (byte) (v >>> 16);
+            buf[pos++] = (byte) (v >>> 8);
+            buf[pos++] = (byte) v;
+        }
+
+        void writeLong(long v) {
+            writeInt((int) (v >>> 32));
+            writeInt((int) v);
+        }
+
+        void writeVarlong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        void writeVarint(int v) {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        //长度+1，0表示null
+        void writeNullableString(String s) {
+            if (s == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package cleanXml;
+
+import cleanXml.XData.XParam;
+import cleanXml.XData.XType;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//canonical的对象表，形参值 -> 对象
+//capacity为0时不限大小，表里的对象跟XSchema活得一样久；大于0时跟XStringPool一样按hash直接定位，冲突时新的覆盖旧的
+//ARRAY形参按内容比较，key里存一份拷贝；LIST，VALUE_LIST形参先换成不可变的再交给构造器，共用对象的各处都改不了它
+final class XCanonicalPool {
+    private final int[] arraySlots;
+    private final int[] listSlots;
+    private final Map<Key, Object> map; //capacity为0时用
+    private final Entry[] table; //capacity大于0时用
+    private final int mask;
+
+    XCanonicalPool(List<XParam> xParamList, int capacity) {
+        int[] arrays = new int[xParamList.size()];
+        int[] lists = new int[xParamList.size()];
+        int a = 0;
+        int l = 0;
+        for (int i = 0; i < xParamList.size(); i++) {
+            XType xType = xParamList.get(i).xType;
+            if (xType == XType.ARRAY) {
+                arrays[a++] = i;
+            } else if (xType == XType.LIST || xType == XType.VALUE_LIST) {
+                lists[l++] = i;
+            }
+        }
+        arraySlots = Arrays.copyOf(arrays, a);
+        listSlots = Arrays.copyOf(lists, l);
+
+        if (capacity == 0) {
+            map = new ConcurrentHashMap<>();
+            table = null;
+            mask = 0;
+        } else {
+            int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+            map = null;
+            table = new Entry[size];
+            mask = size - 1;
+        }
+    }
+
+    //会把params里的list换成不可变的，返回的key之后不受params和数组形参修改的影响
+    Key key(Object[] params) {
+        for (int slot : listSlots) {
+            if (params[slot] != null) {
+                params[slot] = List.copyOf((List<?>) params[slot]);
+            }
+        }
+        Object[] values = params;
+        if (arraySlots.length > 0) {
+            values = params.clone();
+            for (int slot : arraySlots) {
+                values[slot] = copyArray(values[slot]);
+            }
+        }
+        return new Key(values);
+    }
+
+    //没有返回null
+    Object get(Key key) {
+        if (map != null) {
+            return map.get(key);
+        }
+        Entry e = table[key.hash & mask];
+        return e != null && e.key.equals(key) ? e.obj : null;
+    }
+
+    //已经有了返回已有的，否则放进去返回obj
+    Object putIfAbsent(Key key, Object obj) {
+        if (map != null) {
+            Object prev = map.putIfAbsent(key, obj);
+            return prev != null ? prev : obj;
+        }
+        int idx = key.hash & mask;
+        Entry e = table[idx];
+        if (e != null && e.key.equals(key)) {
+            return e.obj;
+        }
+        table[idx] = new Entry(key, obj);
+        return obj;
+    }
+
+    private static Object copyArray(Object arr) {
+        if (arr == null) {
+            return null;
+        }
+        int len = Array.getLength(arr);
+        Object copy = Array.newInstance(arr.getClass().getComponentType(), len);
+        System.arraycopy(arr, 0, copy, 0, len);
+        return copy;
+    }
+
+    static final class Key {
+        private final Object[] values;
+        private final int hash;
+
+        private Key(Object[] values) {
+            this.values = values;
+            int h = Arrays.deepHashCode(values);
+            this.hash = h ^ (h >>> 16);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && hash == k.hash && Arrays.deepEquals(values, k.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    //key和对象一起换，读的线程不会看到不配对的
+    private static final class Entry {
+        final Key key;
+        final Object obj;
+
+        Entry(Key key, Object obj) {
+            this.key = key;
+            this.obj = obj;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package cleanXml;
+
+//一个类型的统计快照，时间和分配都包括子元素
+public final class XClassMetrics {
+    private final String name;
+    private final long decodeCount;
+    private final long decodeNanos;
+    private final long encodeCount;
+    private final long encodeNanos;
+    private final long allocatedBytes;
+    private final long converterCount;
+
+    XClassMetrics(String name, long decodeCount, long decodeNanos, long encodeCount, long encodeNanos,
+                  long allocatedBytes, long converterCount) {
+        this.name = name;
+        this.decodeCount = decodeCount;
+        this.decodeNanos = decodeNanos;
+        this.encodeCount = encodeCount;
+        this.encodeNanos = encodeNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.converterCount = converterCount;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getDecodeCount() {
+        return decodeCount;
+    }
+
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    public long getEncodeCount() {
+        return encodeCount;
+    }
+
+    public long getEncodeNanos() {
+        return encodeNanos;
+    }
+
+    //解码时当前线程分配的字节数，JVM不支持或没打开时为0
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getConverterCount() {
+        return converterCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s decode=%d/%dns encode=%d/%dns alloc=%dB converter=%d",
+                name, decodeCount, decodeNanos, encodeCount, encodeNanos, allocatedBytes, converterCount);
+    }
+}
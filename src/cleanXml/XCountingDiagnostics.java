@@ -0,0 +1,60 @@
+package cleanXml;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+//只计数，不输出；按 tag[attr]，tag<childTag> 分别计数，用来找出哪些旧属性还留在文件里
+public class XCountingDiagnostics implements XDiagnostics {
+    private final LongAdder unusedAttrCount = new LongAdder();
+    private final LongAdder unusedChildCount = new LongAdder();
+    private final Map<String, Map<String, LongAdder>> counts = new ConcurrentHashMap<>(); //tag -> 属性或<子tag> -> 次数
+
+    @Override
+    public void unusedAttr(String tag, String attr, String value) {
+        unusedAttrCount.increment();
+        count(tag, attr);
+    }
+
+    @Override
+    public void unusedChild(String tag, String childTag) {
+        unusedChildCount.increment();
+        count(tag, "<" + childTag + ">");
+    }
+
+    private void count(String tag, String key) {
+        Map<String, LongAdder> m = counts.get(tag);
+        if (m == null) {
+            m = counts.computeIfAbsent(tag, k -> new ConcurrentHashMap<>());
+        }
+        LongAdder c = m.get(key);
+        if (c == null) {
+            c = m.computeIfAbsent(key, k -> new LongAdder());
+        }
+        c.increment();
+    }
+
+    public long getUnusedAttrCount() {
+        return unusedAttrCount.sum();
+    }
+
+    public long getUnusedChildCount() {
+        return unusedChildCount.sum();
+    }
+
+    //tag[attr] 或 tag<childTag> -> 次数，按名字排序
+    public Map<String, Long> getCounts() {
+        Map<String, Long> res = new TreeMap<>();
+        counts.forEach((tag, m) -> m.forEach((key, c) -> {
+            res.put(key.startsWith("<") ? tag + key : tag + "[" + key + "]", c.sum());
+        }));
+        return res;
+    }
+
+    public void reset() {
+        unusedAttrCount.reset();
+        unusedChildCount.reset();
+        counts.clear();
+    }
+}
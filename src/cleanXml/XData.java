@@ -1,29 +1,48 @@
 package cleanXml;
 
-import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import java.io.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 //类似XStream功能
 @SuppressWarnings("unused")
 public class XData {
     private final String scanPkg;
     private final Map<Class<?>, XClass> xClassMap = new IdentityHashMap<>();
-    private Set<Class<?>> scan;
-    private Map<String, XClass> tagToXClassMapCache;
-    private boolean changed;
+    private ClassIndex classIndex; //第一次注册接口时扫描scanPkg
+    private final List<XMetaProvider> metaProviders = new ArrayList<>(); //编译时生成的元数据，有就不反射；实现类列表只是补充
+    private int stringPoolCapacity; //0表示STR形参不经过intern表
+    private XDiagnostics diagnostics = XDiagnostics.CONSOLE;
+    private boolean trackUnused = true;
+    private XMetrics metrics; //null表示不统计
+    private volatile XSchema schema; //null表示有修改，要重新编译
 
     public XData(String scanPkg) {
         this.scanPkg = scanPkg;
+        ServiceLoader.load(XMetaProvider.class, Thread.currentThread().getContextClassLoader()).forEach(metaProviders::add);
     }
 
     enum XType {
         INT,
+        LONG,
         FLOAT,
+        DOUBLE,
+        SHORT,
+        BYTE,
+        CHAR,
         BOOL,
         STR,
+        ARRAY, //int[]，long[]，float[]，double[]
+        VALUE_LIST, //List<Integer>，List<Long>，List<Float>，List<Double>
 
         CLASS,
         LIST,
@@ -32,8 +51,10 @@ public class XData {
     static class XParam {
         String name; //code里的名字
         Field field;
+        MethodHandle getter; //register时生成，原子类型为(Object)int/float等，其他为(Object)Object
 
         XType xType;
+        XType elementType; //ARRAY，VALUE_LIST的元素类型
         XClass xClass;
 
         String alias;
@@ -52,6 +73,245 @@ public class XData {
         boolean nullable() {
             return hasDefaultValue && defaultValue == null;
         }
+
+        //原子类型和枚举存为属性，其他存为子元素
+        boolean isAttr() {
+            return switch (xType) {
+                case INT, LONG, FLOAT, DOUBLE, SHORT, BYTE, CHAR, BOOL, STR, ARRAY, VALUE_LIST -> true;
+                case CLASS -> xClass.xClassType == XClassType.ENUM;
+                case LIST -> false;
+            };
+        }
+
+        XParam copy() {
+            XParam c = new XParam();
+            c.name = name;
+            c.field = field;
+            c.getter = getter;
+            c.xType = xType;
+            c.elementType = elementType;
+            c.xClass = xClass;
+            c.alias = alias;
+            c.converter = converter;
+            c.explicit = explicit;
+            c.hasDefaultValue = hasDefaultValue;
+            c.defaultValue = defaultValue;
+            return c;
+        }
+
+        Object get(Object obj) {
+            try {
+                return (Object) getter.invokeExact(obj);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        //原子类型直接取，不装箱；invokeExact的异常由调用方统一用rethrow转换
+        int getInt(Object obj) throws Throwable {
+            return (int) getter.invokeExact(obj);
+        }
+
+        float getFloat(Object obj) throws Throwable {
+            return (float) getter.invokeExact(obj);
+        }
+
+        boolean getBoolean(Object obj) throws Throwable {
+            return (boolean) getter.invokeExact(obj);
+        }
+
+        long getLong(Object obj) throws Throwable {
+            return (long) getter.invokeExact(obj);
+        }
+
+        double getDouble(Object obj) throws Throwable {
+            return (double) getter.invokeExact(obj);
+        }
+
+        short getShort(Object obj) throws Throwable {
+            return (short) getter.invokeExact(obj);
+        }
+
+        byte getByte(Object obj) throws Throwable {
+            return (byte) getter.invokeExact(obj);
+        }
+
+        char getChar(Object obj) throws Throwable {
+            return (char) getter.invokeExact(obj);
+        }
+
+        //原子类型和STR，属性值 -> 形参值
+        Object parse(String s) {
+            int len = s.length();
+            return switch (xType) {
+                case INT -> XNumbers.parseInt(s, 0, len);
+                case LONG -> XNumbers.parseLong(s, 0, len);
+                case FLOAT -> XNumbers.parseFloat(s, 0, len);
+                case DOUBLE -> XNumbers.parseDouble(s, 0, len);
+                case SHORT -> XNumbers.parseShort(s, 0, len);
+                case BYTE -> XNumbers.parseByte(s, 0, len);
+                case CHAR -> XNumbers.parseChar(s, 0, len);
+                case BOOL -> XNumbers.parseBoolean(s, 0, len);
+                case STR -> s;
+                case ARRAY -> parseArray(s);
+                case VALUE_LIST -> toList(parseArray(s));
+                default -> throw new IllegalStateException(xType + " 不是原子类型");
+            };
+        }
+
+        //逗号分隔，元素前后可以有空白，直接解析到原子类型数组里
+        Object parseArray(String s) {
+            int count = 0;
+            if (!s.isBlank()) {
+                count = 1;
+                for (int i = s.indexOf(','); i >= 0; i = s.indexOf(',', i + 1)) {
+                    count++;
+                }
+            }
+
+            Object arr = newArray(count);
+            int start = 0;
+            for (int i = 0; i < count; i++) {
+                int end = s.indexOf(',', start);
+                if (end < 0) {
+                    end = s.length();
+                }
+                int b = start;
+                int e = end;
+                while (b < e && Character.isWhitespace(s.charAt(b))) {
+                    b++;
+                }
+                while (e > b && Character.isWhitespace(s.charAt(e - 1))) {
+                    e--;
+                }
+                switch (elementType) {
+                    case INT -> ((int[]) arr)[i] = XNumbers.parseInt(s, b, e);
+                    case LONG -> ((long[]) arr)[i] = XNumbers.parseLong(s, b, e);
+                    case FLOAT -> ((float[]) arr)[i] = XNumbers.parseFloat(s, b, e);
+                    case DOUBLE -> ((double[]) arr)[i] = XNumbers.parseDouble(s, b, e);
+                }
+                start = end + 1;
+            }
+            return arr;
+        }
+
+        Object newArray(int size) {
+            return switch (elementType) {
+                case INT -> new int[size];
+                case LONG -> new long[size];
+                case FLOAT -> new float[size];
+                case DOUBLE -> new double[size];
+                default -> throw new IllegalStateException(elementType + " 不支持数组");
+            };
+        }
+
+        //VALUE_LIST，数组 -> List
+        static List<Object> toList(Object arr) {
+            int size = Array.getLength(arr);
+            List<Object> list = new ArrayList<>(size);
+            if (arr instanceof int[] a) {
+                for (int v : a) {
+                    list.add(v);
+                }
+            } else if (arr instanceof long[] a) {
+                for (long v : a) {
+                    list.add(v);
+                }
+            } else if (arr instanceof float[] a) {
+                for (float v : a) {
+                    list.add(v);
+                }
+            } else {
+                for (double v : (double[]) arr) {
+                    list.add(v);
+                }
+            }
+            return list;
+        }
+
+        //ARRAY，VALUE_LIST，v是数组或List，结果用逗号分隔
+        void appendValues(StringBuilder sb, Object v) {
+            if (xType == XType.VALUE_LIST) {
+                List<?> list = (List<?>) v;
+                for (int i = 0; i < list.size(); i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    Object e = list.get(i);
+                    switch (elementType) {
+                        case INT -> sb.append((int) (Integer) e);
+                        case LONG -> sb.append((long) (Long) e);
+                        case FLOAT -> XNumbers.appendFloat(sb, (Float) e);
+                        case DOUBLE -> sb.append((double) (Double) e);
+                    }
+                }
+                return;
+            }
+
+            switch (elementType) {
+                case INT -> {
+                    int[] a = (int[]) v;
+                    for (int i = 0; i < a.length; i++) {
+                        if (i > 0) {
+                            sb.append(',');
+                        }
+                        sb.append(a[i]);
+                    }
+                }
+                case LONG -> {
+                    long[] a = (long[]) v;
+                    for (int i = 0; i < a.length; i++) {
+                        if (i > 0) {
+                            sb.append(',');
+                        }
+                        sb.append(a[i]);
+                    }
+                }
+                case FLOAT -> {
+                    float[] a = (float[]) v;
+                    for (int i = 0; i < a.length; i++) {
+                        if (i > 0) {
+                            sb.append(',');
+                        }
+                        XNumbers.appendFloat(sb, a[i]);
+                    }
+                }
+                case DOUBLE -> {
+                    double[] a = (double[]) v;
+                    for (int i = 0; i < a.length; i++) {
+                        if (i > 0) {
+                            sb.append(',');
+                        }
+                        sb.append(a[i]);
+                    }
+                }
+            }
+        }
+
+        //原子类型，形参值 -> 属性值，结果跟String.valueOf一样
+        void append(StringBuilder sb, Object obj) {
+            try {
+                switch (xType) {
+                    case INT -> sb.append(getInt(obj));
+                    case LONG -> sb.append(getLong(obj));
+                    case FLOAT -> XNumbers.appendFloat(sb, getFloat(obj));
+                    case DOUBLE -> sb.append(getDouble(obj));
+                    case SHORT -> sb.append(getShort(obj));
+                    case BYTE -> sb.append(getByte(obj));
+                    case CHAR -> sb.append(getChar(obj));
+                    case BOOL -> sb.append(getBoolean(obj));
+                    default -> throw new IllegalStateException(xType + " 不是原子类型");
+                }
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        String format(Object obj) {
+            StringBuilder sb = new StringBuilder(16);
+            append(sb, obj);
+            return sb.toString();
+        }
     }
 
     enum XClassType {
@@ -63,16 +323,31 @@ public class XData {
     static class XClass {
         Class<?> rawClass;
         Constructor<?> rawConstructor;
+        MethodHandle creator; //register时生成，(Object[])Object
         String name;
 
         XClassType xClassType;
         List<XClass> xImplClassList;
+        Map<String, XClass> implTagMap; //编译时生成，实现类的tag -> 实现类
         List<XParam> xParamList;
         List<Object> xEnumObjList;
+        XEnumTable enumTable; //注册枚举时生成，名字和别名 -> 枚举值
+        Map<String, Integer> attrSlotMap; //编译时生成，属性名 -> 用属性表示的形参序号
+        Map<String, Integer> explicitSlotMap; //编译时生成，包装element的tag -> explicit形参序号
 
         String alias;
         XConverter converter;
         boolean paramNoOrder;
+        boolean needDom; //编译时生成，自己或形参有converter，converter只认DOM
+        boolean canonical; //形参都相等的对象只构造一次，要求对象不可变
+        int canonicalCapacity; //canonical表的上限，0表示不限
+        XCanonicalPool canonicalPool; //编译时生成，形参值 -> 对象
+        XStringPool stringPool; //编译时生成，不为null时STR形参经过intern表
+        int[] strSlots; //编译时生成，STR形参序号
+        XMetrics.ClassStats stats; //编译时生成，没打开统计时为null
+        XDomPlan.DecodeStep[] decodeSteps; //编译时生成，DOM方式解码每个形参一步
+        XDomPlan.EncodeStep[] encodeSteps; //编译时生成，DOM方式编码每个形参一步
+        XStreamPlan streamPlan; //编译时生成，StAX方式读和流式写用，needDom时为null
 
         String tag() {
             if (alias != null) {
@@ -81,20 +356,86 @@ public class XData {
             return name;
         }
 
-        boolean isTagOk(String tag) {
+        XClass copy() {
+            XClass c = new XClass();
+            c.rawClass = rawClass;
+            c.rawConstructor = rawConstructor;
+            c.creator = creator;
+            c.name = name;
+            c.xClassType = xClassType;
+            c.xImplClassList = xImplClassList;
+            c.xParamList = xParamList;
+            c.xEnumObjList = xEnumObjList;
+            c.enumTable = enumTable;
+            c.alias = alias;
+            c.converter = converter;
+            c.paramNoOrder = paramNoOrder;
+            c.canonical = canonical;
+            c.canonicalCapacity = canonicalCapacity;
+            return c;
+        }
+
+        //把引用的XClass换成copies里对应的拷贝，列表都变为不可修改
+        void link(Map<XClass, XClass> copies) {
+            if (xImplClassList != null) {
+                List<XClass> implList = new ArrayList<>(xImplClassList.size());
+                for (XClass implClass : xImplClassList) {
+                    implList.add(copies.get(implClass));
+                }
+                xImplClassList = List.copyOf(implList);
+            }
+            if (xParamList != null) {
+                List<XParam> paramList = new ArrayList<>(xParamList.size());
+                for (XParam xParam : xParamList) {
+                    XParam p = xParam.copy();
+                    if (p.xClass != null) {
+                        p.xClass = copies.get(p.xClass);
+                    }
+                    paramList.add(p);
+                }
+                xParamList = List.copyOf(paramList);
+            }
+            if (xEnumObjList != null) {
+                xEnumObjList = List.copyOf(xEnumObjList);
+            }
+        }
+
+        Object newInstance(Object[] params) {
+            if (stringPool != null) {
+                for (int slot : strSlots) {
+                    params[slot] = stringPool.intern((String) params[slot]);
+                }
+            }
+            if (canonicalPool != null) {
+                XCanonicalPool.Key key = canonicalPool.key(params);
+                Object obj = canonicalPool.get(key);
+                if (obj == null) {
+                    obj = canonicalPool.putIfAbsent(key, create(params));
+                }
+                return obj;
+            }
+            return create(params);
+        }
+
+        private Object create(Object[] params) {
+            try {
+                return (Object) creator.invokeExact(params);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        //tag能作为这个类型的值时，返回tag对应的具体类型，否则返回null
+        XClass resolveTag(String tag) {
             switch (xClassType) {
                 case INTERFACE -> {
-                    for (XClass xClass : xImplClassList) {
-                        if (xClass.tag().equals(tag)) {
-                            return true;
-                        }
-                    }
+                    return implTagMap.get(tag);
                 }
                 case CLASS -> {
-                    return tag().equals(tag);
+                    return tag().equals(tag) ? this : null;
                 }
             }
-            return false;
+            return null;
         }
 
         XParam getXParamAssure(String paramName) {
@@ -111,22 +452,36 @@ public class XData {
         }
 
         Object getEnumObjAssure(String str) {
-            for (Object o : xEnumObjList) {
-                if (o.toString().equalsIgnoreCase(str))
-                    return o;
+            Object o = enumTable.get(str);
+            if (o == null) {
+                throw new IllegalArgumentException(String.format("%s 枚举没找到%s", name, str));
             }
-            throw new IllegalArgumentException(String.format("%s 枚举没找到%s", name, str));
+            return o;
         }
     }
 
 
+    //需要在注册前调用，优先于ServiceLoader找到的
+    public void metaProvider(XMetaProvider provider) {
+        metaProviders.add(0, provider);
+    }
+
+    //接口实现类的索引存在file里，file不存在时扫描后写入，需要在注册接口前调用
+    public void classIndex(Path file) {
+        long start = System.nanoTime();
+        classIndex = ClassIndex.loadOrScan(scanPkg, file);
+        if (metrics != null) {
+            metrics.scanned(System.nanoTime() - start);
+        }
+    }
+
     public XClass register(Class<?> cls) {
         XClass xClass = xClassMap.get(cls);
         if (xClass != null) {
             return xClass;
         }
 
-        changed = true;
+        schema = null;
         if (cls.isInterface()) {
             return registerInterface(cls);
         } else if (cls.isEnum()) {
@@ -145,7 +500,7 @@ public class XData {
             return xClass;
         }
 
-        changed = true;
+        schema = null;
         return registerCls(cls, constructor);
     }
 
@@ -158,6 +513,7 @@ public class XData {
         xClassMap.put(cls, xClass);
 
         xClass.xEnumObjList.addAll(Arrays.asList(cls.getEnumConstants()));
+        xClass.enumTable = new XEnumTable(xClass.name, cls.getEnumConstants());
         return xClass;
     }
 
@@ -169,14 +525,37 @@ public class XData {
         xClass.xImplClassList = new ArrayList<>();
         xClassMap.put(cls, xClass);
 
-        if (scan == null) {
-            scan = PackageScanUtils.scan(scanPkg, true);
+        if (classIndex == null) {
+            long start = System.nanoTime();
+            classIndex = ClassIndex.scan(scanPkg);
+            if (metrics != null) {
+                metrics.scanned(System.nanoTime() - start);
+            }
+        }
+
+        //索引里只有候选类名，只加载这些类
+        Set<Class<?>> implClasses = new LinkedHashSet<>();
+        for (String implName : classIndex.getImplementations(cls.getName())) {
+            try {
+                implClasses.add(Class.forName(implName, false, Thread.currentThread().getContextClassLoader()));
+            } catch (ClassNotFoundException ignored) {
+            }
+        }
+        //编译时生成的实现类列表只是补充，注解处理器只看得到同一次编译的类，一样只要scanPkg下的
+        for (XMetaProvider provider : metaProviders) {
+            Class<?>[] provided = provider.getImplementations(cls);
+            if (provided != null) {
+                for (Class<?> implClass : provided) {
+                    if (inScanPkg(implClass)) {
+                        implClasses.add(implClass);
+                    }
+                }
+            }
         }
 
-        for (Class<?> aClass : scan) {
+        for (Class<?> aClass : implClasses) {
             int modifiers = aClass.getModifiers();
-            if (!Modifier.isAbstract(modifiers) && Modifier.isPublic(modifiers) &&
-                    ClassUtils.getAllInterfaces(aClass).contains(cls)) {
+            if (!Modifier.isAbstract(modifiers) && Modifier.isPublic(modifiers) && cls.isAssignableFrom(aClass)) {
 
                 XClass xSubClass = register(aClass);
                 if (xSubClass != null) {
@@ -188,6 +567,10 @@ public class XData {
         return xClass;
     }
 
+    private boolean inScanPkg(Class<?> cls) {
+        return scanPkg.isEmpty() || cls.getName().startsWith(scanPkg + ".");
+    }
+
     private XClass registerCls(Class<?> cls) {
         Constructor<?>[] constructors = cls.getConstructors();
         if (constructors.length != 1) {
@@ -201,16 +584,31 @@ public class XData {
         XClass xClass = new XClass();
         xClass.xClassType = XClassType.CLASS;
         xClass.rawClass = cls;
-        constructor.setAccessible(true);
         xClass.rawConstructor = constructor;
         xClass.name = cls.getSimpleName();
         xClass.xParamList = new ArrayList<>();
         xClassMap.put(cls, xClass);
 
-        for (Parameter parameter : constructor.getParameters()) {
+        String[] paramNames = null;
+        XMetaProvider.Creator creator = null;
+        for (XMetaProvider provider : metaProviders) {
+            paramNames = provider.getParamNames(cls);
+            if (paramNames != null) {
+                creator = provider.getCreator(cls);
+                break;
+            }
+        }
+        if (paramNames != null && paramNames.length != constructor.getParameterCount()) {
+            throw new IllegalStateException(String.format("类:%s 生成的形参名个数跟构造器不一致，需要重新编译", xClass.name));
+        }
+        xClass.creator = creator != null ? ClassUtils.creatorHandle(creator) : ClassUtils.constructorHandle(constructor);
+
+        Parameter[] parameters = constructor.getParameters();
+        for (int i = 0; i < parameters.length; i++) {
+            Parameter parameter = parameters[i];
             Class<?> type = parameter.getType();
             XParam xp = new XParam();
-            xp.name = parameter.getName();
+            xp.name = paramNames != null ? paramNames[i] : parameter.getName();
             if (!Character.isLowerCase(xp.name.charAt(0))) {
                 throw new RuntimeException(
                         String.format("类:%s 构造器的形参名字:%s 应该以小写开头", xClass.name, xp.name));
@@ -225,8 +623,18 @@ public class XData {
             if (type.isPrimitive()) {
                 if (type == int.class) {
                     xp.xType = XType.INT;
+                } else if (type == long.class) {
+                    xp.xType = XType.LONG;
                 } else if (type == float.class) {
                     xp.xType = XType.FLOAT;
+                } else if (type == double.class) {
+                    xp.xType = XType.DOUBLE;
+                } else if (type == short.class) {
+                    xp.xType = XType.SHORT;
+                } else if (type == byte.class) {
+                    xp.xType = XType.BYTE;
+                } else if (type == char.class) {
+                    xp.xType = XType.CHAR;
                 } else if (type == boolean.class) {
                     xp.xType = XType.BOOL;
                 } else {
@@ -237,25 +645,56 @@ public class XData {
                 xp.xType = XType.STR;
 
             } else if (type.isArray()) {
-                throw new IllegalArgumentException("不支持Array类型");
+                xp.xType = XType.ARRAY;
+                xp.elementType = valueElementType(type.getComponentType());
+                if (xp.elementType == null) {
+                    throw new IllegalArgumentException(String.format("不支持%s这个数组类型", type.getSimpleName()));
+                }
 
             } else if (Collection.class.isAssignableFrom(type)) {
-                xp.xType = XType.LIST;
                 ParameterizedType t = (ParameterizedType) parameter.getParameterizedType();
                 Class<?> ele = (Class<?>) t.getActualTypeArguments()[0];
-                xp.xClass = register(ele);
+                xp.elementType = valueElementType(ele);
+                if (xp.elementType != null) {
+                    xp.xType = XType.VALUE_LIST;
+                } else {
+                    xp.xType = XType.LIST;
+                    xp.xClass = register(ele);
+                }
 
             } else {
                 xp.xType = XType.CLASS;
                 xp.xClass = register(type);
             }
 
+            Class<?> valueType = type.isPrimitive() ? type : Object.class;
+            try {
+                xp.getter = ClassUtils.getterHandle(xp.field, valueType);
+            } catch (WrongMethodTypeException e) {
+                throw new RuntimeException(
+                        String.format("类:%s 成员变量:%s 的类型跟构造器形参类型不一致", xClass.name, xp.name));
+            }
+
             xClass.xParamList.add(xp);
         }
         return xClass;
     }
 
 
+    //数组和List里能用逗号分隔存为属性的元素类型，不支持返回null
+    private static XType valueElementType(Class<?> type) {
+        if (type == int.class || type == Integer.class) {
+            return XType.INT;
+        } else if (type == long.class || type == Long.class) {
+            return XType.LONG;
+        } else if (type == float.class || type == Float.class) {
+            return XType.FLOAT;
+        } else if (type == double.class || type == Double.class) {
+            return XType.DOUBLE;
+        }
+        return null;
+    }
+
     private XClass getXClassAssure(Class<?> cls) {
         XClass xClass = xClassMap.get(cls);
         if (xClass == null) {
@@ -270,12 +709,12 @@ public class XData {
 
     public void alias(String alias, Class<?> cls) {
         getXClassAssure(cls).alias = alias;
-        changed = true;
+        schema = null;
     }
 
     public void alias(String paramAlias, Class<?> cls, String paramName) {
         getXParamAssure(cls, paramName).alias = paramAlias;
-        changed = true;
+        schema = null;
     }
 
 
@@ -285,20 +724,72 @@ public class XData {
             throw new IllegalArgumentException(String.format("类型%s是接口或枚举，无需配置noOrder", cls));
         }
         xClass.paramNoOrder = true;
-        changed = true;
+        schema = null;
+    }
+
+
+    //结构相同的对象共用一个实例，适合大量重复的小对象，对象需要是不可变的
+    //ARRAY形参按内容比较，LIST形参交给构造器的是不可变list
+    //表不限大小，对象跟XSchema活得一样久；数据量大时用canonical(cls, capacity)
+    public void canonical(Class<?> cls) {
+        canonical(cls, 0);
+    }
+
+    //表最多capacity项，冲突时新的覆盖旧的，只是少复用一些；0表示不限
+    public void canonical(Class<?> cls, int capacity) {
+        XClass xClass = getXClassAssure(cls);
+        if (xClass.xClassType != XClassType.CLASS) {
+            throw new IllegalArgumentException(String.format("类型%s是接口或枚举，无需配置canonical", cls));
+        }
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity不能小于0");
+        }
+        xClass.canonical = true;
+        xClass.canonicalCapacity = capacity;
+        schema = null;
     }
 
+    //STR形参经过一个最多capacity项的intern表，重复的字符串共用一个实例；0表示关闭
+    public void internStrings(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity不能小于0");
+        }
+        stringPoolCapacity = capacity;
+        schema = null;
+    }
+
+    //未使用的属性，子元素和print的输出交给diagnostics，默认是XDiagnostics.CONSOLE
+    public void diagnostics(XDiagnostics diagnostics) {
+        this.diagnostics = Objects.requireNonNull(diagnostics);
+        schema = null;
+    }
+
+    //false时解析不再收集未使用的属性，子元素
+    public void trackUnused(boolean track) {
+        trackUnused = track;
+        schema = null;
+    }
+
+    //打开统计，null表示关闭；在编译schema时生效，见XMetrics
+    public void metrics(XMetrics metrics) {
+        this.metrics = metrics;
+        schema = null;
+    }
+
+    public XMetrics getMetrics() {
+        return metrics;
+    }
 
     public void explicit(Class<?> cls, String paramName) {
         getXParamAssure(cls, paramName).explicit = true;
-        changed = true;
+        schema = null;
     }
 
     public void defaultValue(Object defaultValue, Class<?> cls, String paramName) {
         XParam xParam = getXParamAssure(cls, paramName);
         xParam.hasDefaultValue = true;
         xParam.defaultValue = defaultValue;
-        changed = true;
+        schema = null;
     }
 
     public void converter(XConverter converter, Class<?> cls) {
@@ -308,372 +799,196 @@ public class XData {
         }
 
         xClass.converter = converter;
-        changed = true;
+        schema = null;
     }
 
     public void converter(XConverter converter, Class<?> cls, String paramName) {
         getXParamAssure(cls, paramName).converter = converter;
-        changed = true;
+        schema = null;
     }
 
-
-    public void check() {
-        changed = false;
-        tagToXClassMapCache = new HashMap<>();
-        for (XClass xClass : xClassMap.values()) {
-            if (xClass.xClassType == XClassType.CLASS) {
-                //检查是否能生成
-                checkOne(xClass);
-                //cache下来
-                String tag = xClass.tag();
-                if (tagToXClassMapCache.put(tag, xClass) != null) {
-                    throw new IllegalStateException(tag + " tag重复了");
-                }
-            }
+    //xml里alias也解析成constant，忽略大小写；写xml时还是用constant本身的名字
+    public void enumAlias(Class<?> cls, String alias, Object constant) {
+        XClass xClass = getXClassAssure(cls);
+        if (xClass.xClassType != XClassType.ENUM) {
+            throw new IllegalArgumentException(String.format("类型%s不是枚举", cls));
         }
+        if (!cls.isInstance(constant)) {
+            throw new IllegalArgumentException(String.format("%s 不是枚举%s的值", constant, cls));
+        }
+
+        xClass.enumTable = xClass.enumTable.withAlias(alias, constant);
+        schema = null;
     }
 
-    private void checkOne(XClass xClass) {
-        if (xClass.converter != null) {
-            return;
-        }
 
-        Set<Class<?>> listClassSet = new HashSet<>();
-        List<XParam> testXParams = new ArrayList<>();
-        boolean explicit = false;
-        for (XParam xParam : xClass.xParamList) {
-            if ((!xParam.explicit) &&
-                    (xParam.xType == XType.LIST || xParam.xType == XType.CLASS) &&
-                    xParam.xClass.xClassType != XClassType.ENUM) {
-                //默认全展开作为子element,但万一有2个类型相同，xml一定要包一层参数名为tag的element
-                testXParams.add(xParam);
-                if (!listClassSet.add(xParam.xClass.rawClass)) {
-                    explicit = true;
-                    break;
-                }
+    //编译成不可变的XSchema，XData没修改时返回同一个
+    public XSchema compile() {
+        XSchema s = schema;
+        if (s == null) {
+            long start = System.nanoTime();
+            s = new XSchema(xClassMap.values(), stringPoolCapacity, diagnostics, trackUnused, metrics);
+            if (metrics != null) {
+                metrics.compiled(System.nanoTime() - start);
             }
+            schema = s;
         }
+        return s;
+    }
 
-        if (explicit) {
-            for (XParam xParam : testXParams) {
-                xParam.explicit = true;
-            }
+    public void check() {
+        schema = null;
+        compile();
+    }
+
+    static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException re) {
+            return re;
+        }
+        if (e instanceof Error err) {
+            throw err;
         }
+        return new RuntimeException(e);
     }
 
-    @SuppressWarnings("unchecked")
     public <T> T fromXmlString(String xml) {
-        return (T) fromXmlElementToObj(DomUtils.stringToElement(xml));
+        return compile().fromXmlString(xml);
     }
 
-    @SuppressWarnings({"unchecked", "unused"})
-    public <T> T fromXmlElement(Element ele) {
-        return (T) fromXmlElementToObj(ele);
+    public <T> T fromXmlReader(Reader reader) {
+        return compile().fromXmlReader(reader);
     }
 
-    @SuppressWarnings("unchecked")
-    public <T> T fromXmlElementAssure(Element ele) {
-        Object t = fromXmlElementToObj(ele);
-        if (t == null) {
-            throw new RuntimeException("反序列化失败:\n" + DomUtils.elementToString(ele));
-        }
-        return (T) t;
+    public <T> T fromXmlStream(InputStream in) {
+        return compile().fromXmlStream(in);
     }
 
-    public Object fromXmlElementToObj(Element ele) {
-        if (changed) {
-            check();
-        }
+    public <T> XRecordReader<T> recordReader(InputStream in) {
+        return compile().recordReader(in);
+    }
 
-        if (ele == null) {
-            return null;
-        }
+    public <T> XRecordReader<T> recordReader(InputStream in, int batchSize) {
+        return compile().recordReader(in, batchSize);
+    }
 
-        XClass xClass = tagToXClassMapCache.get(ele.getTagName());
-        if (xClass == null) {
-            return null;
-        }
+    public <T> XRecordReader<T> recordReader(InputStream in, int batchSize, Executor executor) {
+        return compile().recordReader(in, batchSize, executor);
+    }
 
+    public <T> Stream<T> streamRecords(Path file) {
+        return compile().streamRecords(file);
+    }
 
-        XElement xEle = new XElement(ele);
-        if (xClass.converter != null) {
-            Object res = xClass.converter.fromXmlElement(xEle);
-            if (res != null) {
-                xEle.printUnused();
-                return res;
-            }
-        }
+    public <T> Stream<T> streamRecords(Path file, int batchSize) {
+        return compile().streamRecords(file, batchSize);
+    }
 
-        if (xClass.xParamList == null) {
-            return null;
-        }
+    public <T> Stream<T> streamRecords(Path file, int batchSize, Executor executor) {
+        return compile().streamRecords(file, batchSize, executor);
+    }
 
-        Object[] params = new Object[xClass.xParamList.size()];
-        List<XElement.XEle> childElements = xEle.getChildXElementsStartWithUpperLetter(); //注意这里的假设，假设构造器的形参都小写字母开头
-        int childIdx = 0;
-        int paramIdx = 0;
-        for (XParam xParam : xClass.xParamList) {
-            String attr = xParam.attr();
-            Object v = null;
-            if (xParam.converter != null) {
-                v = xParam.converter.fromXmlElement(xEle);
-            }
-            if (v == null) {  //如果返回为null，使用系统方式
-                switch (xParam.xType) {
-                    case INT -> {
-                        if (xEle.hasAttr(attr)) {
-                            v = Integer.parseInt(xEle.useAttrAssure(attr));
-                        } else {
-                            require(xParam.hasDefaultValue, String.format("缺少属性%s[%s]", ele.getTagName(), attr));
-                            v = xParam.defaultValue;
-                        }
-                    }
-                    case FLOAT -> {
-                        if (xEle.hasAttr(attr)) {
-                            v = Float.parseFloat(xEle.useAttrAssure(attr));
-                        } else {
-                            require(xParam.hasDefaultValue, String.format("缺少属性%s[%s]", ele.getTagName(), attr));
-                            v = xParam.defaultValue;
-                        }
-                    }
-                    case BOOL -> {
-                        if (xEle.hasAttr(attr)) {
-                            v = Boolean.parseBoolean(xEle.useAttrAssure(attr));
-                        } else {
-                            require(xParam.hasDefaultValue, String.format("缺少属性%s[%s]", ele.getTagName(), attr));
-                            v = xParam.defaultValue;
-                        }
-                    }
-                    case STR -> {
-                        if (xEle.hasAttr(attr)) {
-                            v = xEle.useAttrAssure(attr);
-                        } else {
-                            require(xParam.hasDefaultValue, String.format("缺少属性%s[%s]", ele.getTagName(), attr));
-                            v = xParam.defaultValue;
-                        }
-                    }
-                    case CLASS -> {
-                        if (xParam.xClass.xClassType == XClassType.ENUM) {
-                            String vStr = xEle.useAttrAssure(attr);
-                            v = xParam.xClass.getEnumObjAssure(vStr);
-
-                        } else if (xParam.explicit) {
-                            Element attrEle = xEle.getChildElementByTagAssure1Or0(attr);
-                            if (attrEle == null) {
-                                require(xParam.hasDefaultValue, String.format("缺少子元素%s<%s>", ele.getTagName(), attr));
-                                v = xParam.defaultValue;
-                            } else {
-                                Element attrChild = DomUtils.getChildElementAssure1(attrEle);
-                                v = fromXmlElementAssure(attrChild);
-                                require(xParam.xClass.rawClass.isInstance(v), String.format("子元素%s<%s>里非%s类型",
-                                        ele.getTagName(), attr, xParam.xClass.tag()));
-
-                            }
-
-                        } else if (xClass.paramNoOrder) {
-                            XElement.XEle choose = null;
-                            for (XElement.XEle child : childElements) {
-                                if (child.isUnused() && xParam.xClass.isTagOk(child.getEle().getTagName())) {
-                                    choose = child;
-                                    break;
-                                }
-                            }
-
-                            if (choose != null) {
-                                choose.setUsed();
-                                v = fromXmlElementAssure(choose.getEle());
-                            } else {
-                                require(xParam.hasDefaultValue, String.format("%s.%s 没找到类型为%s的子元素",
-                                        ele.getTagName(), attr, xParam.xClass.tag()));
-                                v = xParam.defaultValue;
-                            }
-
-                        } else { //按顺序一个一个来
-                            if (childIdx < childElements.size()) {
-                                XElement.XEle child = childElements.get(childIdx);
-                                if (xParam.xClass.isTagOk(child.getEle().getTagName())) {
-                                    child.setUsed();
-                                    childIdx++;
-                                    v = fromXmlElementAssure(child.getEle());
-
-                                } else {
-                                    require(xParam.hasDefaultValue, String.format("%s.%s 下一个元素是%s，不符合类型%s要求",
-                                            ele.getTagName(), attr, child.getEle().getTagName(), xParam.xClass.tag()));
-                                    v = xParam.defaultValue;
-                                }
-                            } else {
-                                require(xParam.hasDefaultValue, String.format("%s.%s 无符合类型%s要求的子元素了",
-                                        ele.getTagName(), attr, xParam.xClass.tag()));
-                                v = xParam.defaultValue;
-                            }
-                        }
-                    }
-                    case LIST -> {
-                        List<Object> list = new ArrayList<>();
-                        v = list;
-                        if (xParam.explicit) {
-                            Element attrEle = xEle.getChildElementByTagAssure1Or0(attr);
-                            if (attrEle != null) { //这里假设所有的list都empty able
-                                for (Element childElement : DomUtils.getChildElements(attrEle)) {
-                                    Object c = fromXmlElementAssure(childElement);
-                                    require(xParam.xClass.rawClass.isInstance(c), String.format("%s.%s 下子元素%s不符合类型%s要求",
-                                            ele.getTagName(), attr, childElement.getTagName(), xParam.xClass.tag()));
-                                    list.add(c);
-                                }
-                            }
-
-                        } else if (xClass.paramNoOrder) {
-                            for (XElement.XEle child : childElements) {
-                                if (child.isUnused() && xParam.xClass.isTagOk(child.getEle().getTagName())) {
-                                    child.setUsed();
-                                    Object c = fromXmlElementAssure(child.getEle());
-                                    list.add(c);
-                                }
-                            }
-
-                        } else {
-                            while (childIdx < childElements.size()) { //按顺序一个一个来
-                                XElement.XEle child = childElements.get(childIdx);
-                                if (xParam.xClass.isTagOk(child.getEle().getTagName())) {
-                                    child.setUsed();
-                                    childIdx++;
-                                    Object c = fromXmlElementAssure(child.getEle());
-                                    list.add(c);
-                                } else {
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+    public XLoadResult loadAll(Path dir) {
+        return compile().loadAll(dir);
+    }
 
-            params[paramIdx++] = v;
-        }
+    public XLoadResult loadAll(Path dir, String glob, int parallelism) {
+        return compile().loadAll(dir, glob, parallelism);
+    }
 
-        xEle.printUnused();
+    public List<XIssue> validate(Reader reader) {
+        return compile().validate(reader);
+    }
 
-        try {
-            return xClass.rawConstructor.newInstance(params);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+    public List<XIssue> validate(InputStream in) {
+        return compile().validate(in);
     }
 
-    private void require(boolean ok, String err) {
-        if (!ok) {
-            throw new IllegalArgumentException(err);
-        }
+    public XValidateResult validateAll(Path dir) {
+        return compile().validateAll(dir);
+    }
+
+    public XValidateResult validateAll(Path dir, String glob, int parallelism) {
+        return compile().validateAll(dir, glob, parallelism);
+    }
+
+    public XReloader reloader(Path dir, String glob) {
+        return compile().reloader(dir, glob);
+    }
+
+    public <T> T fromXmlElement(Element ele) {
+        return compile().fromXmlElement(ele);
+    }
+
+    public <T> T fromXmlElementAssure(Element ele) {
+        return compile().fromXmlElementAssure(ele);
+    }
+
+    public Object fromXmlElementToObj(Element ele) {
+        return compile().fromXmlElementToObj(ele);
     }
 
     public String toXmlString(Object obj) {
-        Document doc = DomUtils.newDocument();
-        Element tmp = doc.createElement("tmp");
-        if (!toXmlElement(obj, tmp)) {
-            return null;
-        }
-        Element thisE = DomUtils.getChildElementAssure1(tmp);
-        return DomUtils.elementToString(thisE);
+        return compile().toXmlString(obj);
     }
 
-    public void toXmlElementAssure(Object obj, Element parentEle) {
-        if (!toXmlElement(obj, parentEle)) {
-            throw new RuntimeException(String.format("%s 类型为%s，序列化到xml失败", obj, obj.getClass()));
-        }
+    public boolean toXml(Object obj, Writer writer, boolean indent) {
+        return compile().toXml(obj, writer, indent);
     }
 
-    public boolean toXmlElement(Object obj, Element parentEle) {
-        if (changed) {
-            check();
-        }
+    public boolean toXml(Object obj, OutputStream out, boolean indent) {
+        return compile().toXml(obj, out, indent);
+    }
 
-        XClass xClass = xClassMap.get(obj.getClass());
-        if (xClass == null) {
-            return false;
-        }
+    public byte[] toBinary(Object obj) {
+        return compile().toBinary(obj);
+    }
 
-        if (xClass.converter != null) {
-            boolean res = xClass.converter.toXmlElement(obj, parentEle);
-            if (res) {
-                return true;
-            }
-        }
+    public boolean toBinary(Object obj, OutputStream out) {
+        return compile().toBinary(obj, out);
+    }
 
-        if (xClass.xParamList == null) {
-            return false;
-        }
+    public <T> T fromBinary(byte[] data) {
+        return compile().fromBinary(data);
+    }
 
-        Element ele = DomUtils.newChild(parentEle, xClass.tag());
+    public <T> T fromBinary(ByteBuffer buf) {
+        return compile().fromBinary(buf);
+    }
 
-        for (XParam xParam : xClass.xParamList) {
-            try {
-                if (xParam.converter != null) {
-                    Object v = xParam.field.get(obj);
-                    if (xParam.converter.toXmlElement(v, ele)) {
-                        continue;
-                    }
-                }
+    public <T> T fromBinary(InputStream in) {
+        return compile().fromBinary(in);
+    }
 
-                String attr = xParam.attr();
-                switch (xParam.xType) {
-                    case INT -> {
-                        int v = xParam.field.getInt(obj);
-                        ele.setAttribute(attr, String.valueOf(v));
-                    }
-                    case FLOAT -> {
-                        float v = xParam.field.getFloat(obj);
-                        ele.setAttribute(attr, String.valueOf(v));
-                    }
-                    case BOOL -> {
-                        boolean v = xParam.field.getBoolean(obj);
-                        ele.setAttribute(attr, String.valueOf(v));
-                    }
-                    case STR -> {
-                        Object v = xParam.field.get(obj);
-                        if (v != null) {
-                            ele.setAttribute(attr, v.toString());
-                        } else {
-                            require(xParam.nullable(), String.format("%s.%s需要不为null", xClass.name, attr));
-                        }
-                    }
-                    case CLASS -> {
-                        Object v = xParam.field.get(obj);
-                        if (v == null) {
-                            require(xParam.nullable(), String.format("%s.%s需要不为null", xClass.name, attr));
-
-                        } else if (xParam.xClass.xClassType == XClassType.ENUM) {
-                            ele.setAttribute(attr, v.toString());
-
-                        } else if (xParam.explicit) {
-                            Element attrEle = DomUtils.newChild(ele, attr);
-                            boolean ok = toXmlElement(v, attrEle);
-                            require(ok, String.format("%s.%s 类型为%s, 生成xml失败", xClass.name, attr, v.getClass()));
-
-                        } else {
-                            boolean ok = toXmlElement(v, ele);
-                            require(ok, String.format("%s.%s 类型为%s, 生成xml失败", xClass.name, attr, v.getClass()));
-                        }
-                    }
-                    case LIST -> {
-                        Object v = xParam.field.get(obj);
-                        @SuppressWarnings("unchecked")
-                        List<Object> list = (List<Object>) v;
-                        Element attrEle = ele;
-                        if (xParam.explicit) {
-                            attrEle = DomUtils.newChild(ele, attr);
-                        }
-                        for (Object o : list) {
-                            boolean ok = toXmlElement(o, attrEle);
-                            require(ok, String.format("%s.%s 中元素类型类型为%s, 生成xml失败", xClass.name, attr, o.getClass()));
-                        }
-                    }
-                }
-            } catch (IllegalAccessException exception) {
-                throw new RuntimeException(exception);
-            }
-        }
+    public void xmlToBinary(Path xmlFile, Path binaryFile) {
+        compile().xmlToBinary(xmlFile, binaryFile);
+    }
+
+    public void binaryToXml(Path binaryFile, Path xmlFile) {
+        compile().binaryToXml(binaryFile, xmlFile);
+    }
+
+    public void writeArchive(Map<String, ?> objects, Path file) {
+        compile().writeArchive(objects, file);
+    }
+
+    public XArchive openArchive(Path file) {
+        return compile().openArchive(file);
+    }
+
+    public XRecordWriter recordWriter(OutputStream out, String rootTag, boolean indent) {
+        return compile().recordWriter(out, rootTag, indent);
+    }
+
+    public XRecordWriter recordWriter(WritableByteChannel channel, String rootTag, boolean indent) {
+        return compile().recordWriter(channel, rootTag, indent);
+    }
+
+    public void toXmlElementAssure(Object obj, Element parentEle) {
+        compile().toXmlElementAssure(obj, parentEle);
+    }
 
-        return true;
+    public boolean toXmlElement(Object obj, Element parentEle) {
+        return compile().toXmlElement(obj, parentEle);
     }
 
     public void print() {
@@ -706,6 +1021,9 @@ public class XData {
                 for (XParam xParam : xClass.xParamList) {
                     sb.append("\n      ").append(xParam.attr()).append(":");
                     sb.append(xParam.xType);
+                    if (xParam.elementType != null) {
+                        sb.append("<").append(xParam.elementType).append(">");
+                    }
                     if (xParam.xClass != null) {
                         sb.append("<").append(xParam.xClass.name).append(">");
                     }
@@ -723,6 +1041,6 @@ public class XData {
             }
         }
 
-        System.out.println(sb);
+        diagnostics.info(sb.toString());
     }
 }
@@ -0,0 +1,75 @@
+package cleanXml;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+//解码失败，除了原因还带出错元素从根开始的路径，StAX方式还有行号
+//只在失败时构造，解码成功时不生成任何出错信息
+public class XDecodeException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final String reason;
+    private String path = ""; //从根开始，/分隔，只在出错时往前拼
+    private int line = -1;
+
+    XDecodeException(String reason) {
+        super(reason);
+        this.reason = reason;
+    }
+
+    XDecodeException(String reason, Throwable cause) {
+        super(reason, cause);
+        this.reason = reason;
+    }
+
+    //DOM方式，路径沿parent一直找到根
+    static XDecodeException of(Element ele, String reason) {
+        return of(ele, reason, null);
+    }
+
+    static XDecodeException of(Element ele, String reason, Throwable cause) {
+        XDecodeException e = new XDecodeException(reason, cause);
+        for (Node n = ele; n instanceof Element p; n = n.getParentNode()) {
+            e.addParent(p.getTagName());
+        }
+        return e;
+    }
+
+    //StAX方式，异常往外传时每层加上自己的tag
+    void addParent(String tag) {
+        path = path.isEmpty() ? tag : tag + "/" + path;
+    }
+
+    void setLineIfAbsent(int line) {
+        if (this.line < 0) {
+            this.line = line;
+        }
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    //如 World/Holder/Bee
+    public String getPath() {
+        return path;
+    }
+
+    //从1开始，不知道时为-1
+    public int getLine() {
+        return line;
+    }
+
+    @Override
+    public String getMessage() {
+        if (path.isEmpty() && line < 0) {
+            return reason;
+        }
+        StringBuilder sb = new StringBuilder(reason).append(" (");
+        sb.append(getPath());
+        if (line >= 0) {
+            sb.append(path.isEmpty() ? "" : " ").append("第").append(line).append("行");
+        }
+        return sb.append(')').toString();
+    }
+}
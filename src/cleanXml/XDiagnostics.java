@@ -0,0 +1,35 @@
+package cleanXml;
+
+//解析时的诊断信息：没用到的属性，子元素；XData.print的输出
+//方法默认什么都不做，只实现关心的；会在解析线程里直接调用，要线程安全，不要阻塞
+public interface XDiagnostics {
+    XDiagnostics NONE = new XDiagnostics() {
+    };
+
+    //跟以前一样打印到System.out
+    XDiagnostics CONSOLE = new XDiagnostics() {
+        @Override
+        public void unusedAttr(String tag, String attr, String value) {
+            System.out.printf("%s[%s] = %s 未使用%n", tag, attr, value);
+        }
+
+        @Override
+        public void unusedChild(String tag, String childTag) {
+            System.out.printf("%s<%s> 未使用%n", tag, childTag);
+        }
+
+        @Override
+        public void info(String message) {
+            System.out.println(message);
+        }
+    };
+
+    default void unusedAttr(String tag, String attr, String value) {
+    }
+
+    default void unusedChild(String tag, String childTag) {
+    }
+
+    default void info(String message) {
+    }
+}
@@ -0,0 +1,490 @@
+package cleanXml;
+
+import cleanXml.XData.XClass;
+import cleanXml.XData.XClassType;
+import cleanXml.XData.XParam;
+import org.w3c.dom.Element;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//DOM方式解码，编码的执行计划：编译时按形参的类型，converter，explicit，noOrder给每个形参选好一步
+//XSchema.fromXmlElementToObj，toXmlElement 只按顺序执行这些步，不再对形参元数据做判断
+final class XDomPlan {
+    private XDomPlan() {
+    }
+
+    //解码一个元素时各步共享的状态
+    static final class DecodeState {
+        final XSchema schema;
+        final XClass xClass;
+        final Element ele;
+        final XElement xEle;
+        final List<XElement.XEle> childElements;
+        final XSubtreeCache cache;
+        int childIdx; //按顺序匹配时，下一个要匹配的子元素
+
+        DecodeState(XSchema schema, XClass xClass, Element ele, XElement xEle, XSubtreeCache cache) {
+            this.schema = schema;
+            this.xClass = xClass;
+            this.ele = ele;
+            this.xEle = xEle;
+            this.cache = cache;
+            this.childElements = xEle.getChildXElementsStartWithUpperLetter(); //注意这里的假设，假设构造器的形参都小写字母开头
+        }
+    }
+
+    abstract static class DecodeStep {
+        final XParam xParam;
+        final String attr;
+
+        DecodeStep(XParam xParam) {
+            this.xParam = xParam;
+            this.attr = xParam.attr();
+        }
+
+        abstract Object decode(DecodeState st);
+    }
+
+    abstract static class EncodeStep {
+        final XParam xParam;
+        final String attr;
+        final String owner;
+
+        EncodeStep(XClass xClass, XParam xParam) {
+            this.xParam = xParam;
+            this.attr = xParam.attr();
+            this.owner = xClass.name;
+        }
+
+        abstract void encode(XSchema schema, Object obj, Element ele);
+    }
+
+    static DecodeStep[] decodeSteps(XClass xClass) {
+        List<XParam> xParamList = xClass.xParamList;
+        DecodeStep[] steps = new DecodeStep[xParamList.size()];
+        for (int i = 0; i < steps.length; i++) {
+            XParam xParam = xParamList.get(i);
+            DecodeStep step = switch (xParam.xType) {
+                case INT, LONG, FLOAT, DOUBLE, SHORT, BYTE, CHAR, BOOL, STR, ARRAY, VALUE_LIST -> new AttrDecode(xParam);
+                case CLASS -> {
+                    if (xParam.xClass.xClassType == XClassType.ENUM) {
+                        yield new EnumDecode(xParam);
+                    } else if (xParam.explicit) {
+                        yield new ExplicitClassDecode(xParam);
+                    } else if (xClass.paramNoOrder) {
+                        yield new NoOrderClassDecode(xParam);
+                    } else {
+                        yield new OrderedClassDecode(xParam);
+                    }
+                }
+                case LIST -> {
+                    if (xParam.explicit) {
+                        yield new ExplicitListDecode(xParam);
+                    } else if (xClass.paramNoOrder) {
+                        yield new NoOrderListDecode(xParam);
+                    } else {
+                        yield new OrderedListDecode(xParam);
+                    }
+                }
+            };
+            if (xParam.converter != null) {
+                step = new ConverterDecode(step);
+            }
+            steps[i] = step;
+        }
+        return steps;
+    }
+
+    static EncodeStep[] encodeSteps(XClass xClass) {
+        List<XParam> xParamList = xClass.xParamList;
+        EncodeStep[] steps = new EncodeStep[xParamList.size()];
+        for (int i = 0; i < steps.length; i++) {
+            XParam xParam = xParamList.get(i);
+            EncodeStep step = switch (xParam.xType) {
+                case INT, LONG, FLOAT, DOUBLE, SHORT, BYTE, CHAR, BOOL -> new PrimitiveEncode(xClass, xParam);
+                case STR -> new StrEncode(xClass, xParam);
+                case ARRAY, VALUE_LIST -> new ValuesEncode(xClass, xParam);
+                case CLASS -> {
+                    if (xParam.xClass.xClassType == XClassType.ENUM) {
+                        yield new EnumEncode(xClass, xParam);
+                    } else if (xParam.explicit) {
+                        yield new ExplicitClassEncode(xClass, xParam);
+                    } else {
+                        yield new ClassEncode(xClass, xParam);
+                    }
+                }
+                case LIST -> xParam.explicit ? new ExplicitListEncode(xClass, xParam) : new ListEncode(xClass, xParam);
+            };
+            if (xParam.converter != null) {
+                step = new ConverterEncode(xClass, step);
+            }
+            steps[i] = step;
+        }
+        return steps;
+    }
+
+    //converter返回null时用系统方式
+    private static final class ConverterDecode extends DecodeStep {
+        private final DecodeStep fallback;
+
+        ConverterDecode(DecodeStep fallback) {
+            super(fallback.xParam);
+            this.fallback = fallback;
+        }
+
+        @Override
+        Object decode(DecodeState st) {
+            XSchema.countConverter(st.xClass);
+            Object v = xParam.converter.fromXmlElement(st.xEle);
+            return v != null ? v : fallback.decode(st);
+        }
+    }
+
+    private static final class AttrDecode extends DecodeStep {
+        AttrDecode(XParam xParam) {
+            super(xParam);
+        }
+
+        @Override
+        Object decode(DecodeState st) {
+            String s = st.xEle.useAttr(attr);
+            if (s != null) {
+                try {
+                    return xParam.parse(s);
+                } catch (IllegalArgumentException e) {
+                    throw XDecodeException.of(st.ele, String.format("%s[%s] = %s 格式不对: %s", st.ele.getTagName(), attr, s, e.getMessage()), e);
+                }
+            }
+            if (!xParam.hasDefaultValue) {
+                throw XDecodeException.of(st.ele, String.format("缺少属性%s[%s]", st.ele.getTagName(), attr));
+            }
+            return xParam.defaultValue;
+        }
+    }
+
+    private static final class EnumDecode extends DecodeStep {
+        EnumDecode(XParam xParam) {
+            super(xParam);
+        }
+
+        @Override
+        Object decode(DecodeState st) {
+            String s = st.xEle.useAttr(attr);
+            if (s == null) {
+                throw XDecodeException.of(st.ele, String.format("%s[%s] 不存在", st.ele.getTagName(), attr));
+            }
+            try {
+                return xParam.xClass.getEnumObjAssure(s);
+            } catch (IllegalArgumentException e) {
+                throw XDecodeException.of(st.ele, e.getMessage(), e);
+            }
+        }
+    }
+
+    private static final class ExplicitClassDecode extends DecodeStep {
+        ExplicitClassDecode(XParam xParam) {
+            super(xParam);
+        }
+
+        @Override
+        Object decode(DecodeState st) {
+            Element attrEle = st.xEle.getChildElementByTagAssure1Or0(attr);
+            if (attrEle == null) {
+                if (!xParam.hasDefaultValue) {
+                    throw XDecodeException.of(st.ele, String.format("缺少子元素%s<%s>", st.ele.getTagName(), attr));
+                }
+                return xParam.defaultValue;
+            }
+            Element attrChild = DomUtils.getChildElementAssure1(attrEle);
+            Object v = st.schema.fromXmlElementAssure(attrChild, st.cache);
+            if (!xParam.xClass.rawClass.isInstance(v)) {
+                throw XDecodeException.of(st.ele, String.format("子元素%s<%s>里非%s类型",
+                        st.ele.getTagName(), attr, xParam.xClass.tag()));
+            }
+            return v;
+        }
+    }
+
+    private static final class NoOrderClassDecode extends DecodeStep {
+        NoOrderClassDecode(XParam xParam) {
+            super(xParam);
+        }
+
+        @Override
+        Object decode(DecodeState st) {
+            for (XElement.XEle child : st.childElements) {
+                if (child.isUnused()) {
+                    XClass chooseXClass = xParam.xClass.resolveTag(child.getEle().getTagName());
+                    if (chooseXClass != null) {
+                        child.setUsed();
+                        return st.schema.fromXmlElementAssure(chooseXClass, child.getEle(), st.cache);
+                    }
+                }
+            }
+            if (!xParam.hasDefaultValue) {
+                throw XDecodeException.of(st.ele, String.format("%s.%s 没找到类型为%s的子元素",
+                        st.ele.getTagName(), attr, xParam.xClass.tag()));
+            }
+            return xParam.defaultValue;
+        }
+    }
+
+    //按顺序一个一个来
+    private static final class OrderedClassDecode extends DecodeStep {
+        OrderedClassDecode(XParam xParam) {
+            super(xParam);
+        }
+
+        @Override
+        Object decode(DecodeState st) {
+            if (st.childIdx < st.childElements.size()) {
+                XElement.XEle child = st.childElements.get(st.childIdx);
+                XClass childXClass = xParam.xClass.resolveTag(child.getEle().getTagName());
+                if (childXClass != null) {
+                    child.setUsed();
+                    st.childIdx++;
+                    return st.schema.fromXmlElementAssure(childXClass, child.getEle(), st.cache);
+                }
+                if (!xParam.hasDefaultValue) {
+                    throw XDecodeException.of(st.ele, String.format("%s.%s 下一个元素是%s，不符合类型%s要求",
+                            st.ele.getTagName(), attr, child.getEle().getTagName(), xParam.xClass.tag()));
+                }
+            } else if (!xParam.hasDefaultValue) {
+                throw XDecodeException.of(st.ele, String.format("%s.%s 无符合类型%s要求的子元素了",
+                        st.ele.getTagName(), attr, xParam.xClass.tag()));
+            }
+            return xParam.defaultValue;
+        }
+    }
+
+    private static final class ExplicitListDecode extends DecodeStep {
+        ExplicitListDecode(XParam xParam) {
+            super(xParam);
+        }
+
+        @Override
+        Object decode(DecodeState st) {
+            List<Object> list = new ArrayList<>();
+            Element attrEle = st.xEle.getChildElementByTagAssure1Or0(attr);
+            if (attrEle != null) { //这里假设所有的list都empty able
+                for (Element childElement : DomUtils.getChildElements(attrEle)) {
+                    Object c = st.schema.fromXmlElementAssure(childElement, st.cache);
+                    if (!xParam.xClass.rawClass.isInstance(c)) {
+                        throw XDecodeException.of(st.ele, String.format("%s.%s 下子元素%s不符合类型%s要求",
+                                st.ele.getTagName(), attr, childElement.getTagName(), xParam.xClass.tag()));
+                    }
+                    list.add(c);
+                }
+            }
+            return list;
+        }
+    }
+
+    private static final class NoOrderListDecode extends DecodeStep {
+        NoOrderListDecode(XParam xParam) {
+            super(xParam);
+        }
+
+        @Override
+        Object decode(DecodeState st) {
+            List<Object> list = new ArrayList<>();
+            for (XElement.XEle child : st.childElements) {
+                if (child.isUnused()) {
+                    XClass childXClass = xParam.xClass.resolveTag(child.getEle().getTagName());
+                    if (childXClass != null) {
+                        child.setUsed();
+                        list.add(st.schema.fromXmlElementAssure(childXClass, child.getEle(), st.cache));
+                    }
+                }
+            }
+            return list;
+        }
+    }
+
+    private static final class OrderedListDecode extends DecodeStep {
+        OrderedListDecode(XParam xParam) {
+            super(xParam);
+        }
+
+        @Override
+        Object decode(DecodeState st) {
+            List<Object> list = new ArrayList<>();
+            while (st.childIdx < st.childElements.size()) { //按顺序一个一个来
+                XElement.XEle child = st.childElements.get(st.childIdx);
+                XClass childXClass = xParam.xClass.resolveTag(child.getEle().getTagName());
+                if (childXClass == null) {
+                    break;
+                }
+                child.setUsed();
+                st.childIdx++;
+                list.add(st.schema.fromXmlElementAssure(childXClass, child.getEle(), st.cache));
+            }
+            return list;
+        }
+    }
+
+    //converter返回false时用系统方式
+    private static final class ConverterEncode extends EncodeStep {
+        private final XClass xClass;
+        private final EncodeStep fallback;
+
+        ConverterEncode(XClass xClass, EncodeStep fallback) {
+            super(xClass, fallback.xParam);
+            this.xClass = xClass;
+            this.fallback = fallback;
+        }
+
+        @Override
+        void encode(XSchema schema, Object obj, Element ele) {
+            XSchema.countConverter(xClass);
+            if (!xParam.converter.toXmlElement(xParam.get(obj), ele)) {
+                fallback.encode(schema, obj, ele);
+            }
+        }
+    }
+
+    private static final class PrimitiveEncode extends EncodeStep {
+        PrimitiveEncode(XClass xClass, XParam xParam) {
+            super(xClass, xParam);
+        }
+
+        @Override
+        void encode(XSchema schema, Object obj, Element ele) {
+            ele.setAttribute(attr, xParam.format(obj));
+        }
+    }
+
+    private static final class StrEncode extends EncodeStep {
+        StrEncode(XClass xClass, XParam xParam) {
+            super(xClass, xParam);
+        }
+
+        @Override
+        void encode(XSchema schema, Object obj, Element ele) {
+            Object v = xParam.get(obj);
+            if (v != null) {
+                ele.setAttribute(attr, v.toString());
+            } else {
+                if (!xParam.nullable()) {
+                    throw new IllegalArgumentException(String.format("%s.%s需要不为null", owner, attr));
+                }
+            }
+        }
+    }
+
+    private static final class ValuesEncode extends EncodeStep {
+        ValuesEncode(XClass xClass, XParam xParam) {
+            super(xClass, xParam);
+        }
+
+        @Override
+        void encode(XSchema schema, Object obj, Element ele) {
+            Object v = xParam.get(obj);
+            if (v != null) {
+                StringBuilder sb = new StringBuilder();
+                xParam.appendValues(sb, v);
+                ele.setAttribute(attr, sb.toString());
+            } else {
+                if (!xParam.nullable()) {
+                    throw new IllegalArgumentException(String.format("%s.%s需要不为null", owner, attr));
+                }
+            }
+        }
+    }
+
+    private static final class EnumEncode extends EncodeStep {
+        EnumEncode(XClass xClass, XParam xParam) {
+            super(xClass, xParam);
+        }
+
+        @Override
+        void encode(XSchema schema, Object obj, Element ele) {
+            Object v = xParam.get(obj);
+            if (v != null) {
+                ele.setAttribute(attr, v.toString());
+            } else {
+                if (!xParam.nullable()) {
+                    throw new IllegalArgumentException(String.format("%s.%s需要不为null", owner, attr));
+                }
+            }
+        }
+    }
+
+    private static final class ClassEncode extends EncodeStep {
+        ClassEncode(XClass xClass, XParam xParam) {
+            super(xClass, xParam);
+        }
+
+        @Override
+        void encode(XSchema schema, Object obj, Element ele) {
+            Object v = xParam.get(obj);
+            if (v == null) {
+                if (!xParam.nullable()) {
+                    throw new IllegalArgumentException(String.format("%s.%s需要不为null", owner, attr));
+                }
+                return;
+            }
+            boolean ok = schema.toXmlElement(v, ele);
+            if (!ok) {
+                throw new IllegalArgumentException(String.format("%s.%s 类型为%s, 生成xml失败", owner, attr, v.getClass()));
+            }
+        }
+    }
+
+    private static final class ExplicitClassEncode extends EncodeStep {
+        ExplicitClassEncode(XClass xClass, XParam xParam) {
+            super(xClass, xParam);
+        }
+
+        @Override
+        void encode(XSchema schema, Object obj, Element ele) {
+            Object v = xParam.get(obj);
+            if (v == null) {
+                if (!xParam.nullable()) {
+                    throw new IllegalArgumentException(String.format("%s.%s需要不为null", owner, attr));
+                }
+                return;
+            }
+            boolean ok = schema.toXmlElement(v, DomUtils.newChild(ele, attr));
+            if (!ok) {
+                throw new IllegalArgumentException(String.format("%s.%s 类型为%s, 生成xml失败", owner, attr, v.getClass()));
+            }
+        }
+    }
+
+    private static final class ListEncode extends EncodeStep {
+        ListEncode(XClass xClass, XParam xParam) {
+            super(xClass, xParam);
+        }
+
+        @Override
+        void encode(XSchema schema, Object obj, Element ele) {
+            encodeList(schema, obj, ele);
+        }
+
+        void encodeList(XSchema schema, Object obj, Element parent) {
+            for (Object o : (List<?>) xParam.get(obj)) {
+                boolean ok = schema.toXmlElement(o, parent);
+                if (!ok) {
+                    throw new IllegalArgumentException(String.format("%s.%s 中元素类型类型为%s, 生成xml失败", owner, attr, o.getClass()));
+                }
+            }
+        }
+    }
+
+    //包一层<attr>，list为空时也写
+    private static final class ExplicitListEncode extends EncodeStep {
+        private final ListEncode list;
+
+        ExplicitListEncode(XClass xClass, XParam xParam) {
+            super(xClass, xParam);
+            list = new ListEncode(xClass, xParam);
+        }
+
+        @Override
+        void encode(XSchema schema, Object obj, Element ele) {
+            list.encodeList(schema, obj, DomUtils.newChild(ele, attr));
+        }
+    }
+}
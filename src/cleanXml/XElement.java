@@ -3,14 +3,19 @@ package cleanXml;
 import org.w3c.dom.*;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-//主要用于收集没用到的属性或子，打印出来
+//主要用于收集没用到的属性或子，交给XDiagnostics
+//属性和子元素都按名字建了索引，用没用过记在BitSet里
 public class XElement {
 
+    //属性用没用过现在记在XElement的BitSet里，这个类不再使用，只为兼容保留
+    @Deprecated
     public static class XAttr {
         private final Attr attr;
-        private boolean used;
 
         public XAttr(Attr a) {
             attr = a;
@@ -18,11 +23,21 @@ public class XElement {
     }
 
     public static class XEle {
+        private final XElement owner; //为null时是单独构造的，用没用过记在used里
         private final Element ele;
+        private final int index;
         private boolean used;
 
+        //单独构造的不属于任何XElement，只为兼容保留
+        @Deprecated
         public XEle(Element e) {
-            ele = e;
+            this(null, e, -1);
+        }
+
+        XEle(XElement owner, Element e, int index) {
+            this.owner = owner;
+            this.ele = e;
+            this.index = index;
         }
 
         public Element getEle() {
@@ -30,25 +45,39 @@ public class XElement {
         }
 
         public boolean isUnused() {
-            return !used;
+            return owner == null ? !used : !owner.eleUsed.get(index);
         }
 
         public void setUsed() {
-            used = true;
+            if (owner == null) {
+                used = true;
+            } else {
+                owner.eleUsed.set(index);
+            }
         }
     }
 
+    private static final int DUPLICATE = -1;
+
     private final Element ele;
-    private final List<XAttr> xAttrs = new ArrayList<>();
+    private final Attr[] attrs;
+    private final Map<String, Integer> attrIndex;
+    private final BitSet attrUsed = new BitSet();
     private final List<XEle> xElements = new ArrayList<>();
+    private final BitSet eleUsed = new BitSet();
+    private Map<String, Integer> eleIndex; //第一次按tag找时才建，同名多个记为DUPLICATE
 
 
     public XElement(Element ele) {
         this.ele = ele;
         NamedNodeMap attributes = ele.getAttributes();
-        for (int i = 0; i < attributes.getLength(); ++i) {
+        int attrCount = attributes.getLength();
+        attrs = new Attr[attrCount];
+        attrIndex = new HashMap<>(attrCount * 2);
+        for (int i = 0; i < attrCount; ++i) {
             Attr a = (Attr) attributes.item(i);
-            xAttrs.add(new XAttr(a));
+            attrs[i] = a;
+            attrIndex.put(a.getName(), i);
         }
 
         NodeList childNodes = ele.getChildNodes();
@@ -57,41 +86,49 @@ public class XElement {
             if (org.w3c.dom.Node.ELEMENT_NODE != node.getNodeType())
                 continue;
             Element e = (Element) node;
-            xElements.add(new XEle(e));
+            xElements.add(new XEle(this, e, xElements.size()));
         }
     }
 
     public boolean hasAttr(String attr) {
-        for (XAttr xAttr : xAttrs) {
-            if (xAttr.attr.getName().equals(attr)) {
-                return true;
-            }
+        return attrIndex.containsKey(attr);
+    }
+
+    //不存在返回null
+    public String useAttr(String attr) {
+        Integer idx = attrIndex.get(attr);
+        if (idx == null) {
+            return null;
         }
-        return false;
+        attrUsed.set(idx);
+        return attrs[idx].getValue();
     }
 
     public String useAttrAssure(String attr) {
-        for (XAttr xAttr : xAttrs) {
-            if (xAttr.attr.getName().equals(attr)) {
-                xAttr.used = true;
-                return xAttr.attr.getValue();
-            }
+        String v = useAttr(attr);
+        if (v == null) {
+            throw new IllegalArgumentException(String.format("%s[%s] 不存在", ele.getTagName(), attr));
         }
-        throw new IllegalArgumentException(String.format("%s[%s] 不存在", ele.getTagName(), attr));
+        return v;
     }
 
     public Element getChildElementByTagAssure1Or0(String tag) {
-        Element t = null;
-        for (XEle xElement : xElements) {
-            if (xElement.ele.getTagName().equals(tag)) {
-                if (t != null) {
-                    throw new IllegalArgumentException(String.format("%s<%s> 有多个，应该只有1个或0个", ele.getTagName(), tag));
-                }
-                t = xElement.ele;
-                xElement.used = true;
+        if (eleIndex == null) {
+            eleIndex = new HashMap<>(xElements.size() * 2);
+            for (XEle xElement : xElements) {
+                eleIndex.merge(xElement.ele.getTagName(), xElement.index, (a, b) -> DUPLICATE);
             }
         }
-        return t;
+
+        Integer idx = eleIndex.get(tag);
+        if (idx == null) {
+            return null;
+        }
+        if (idx == DUPLICATE) {
+            throw new IllegalArgumentException(String.format("%s<%s> 有多个，应该只有1个或0个", ele.getTagName(), tag));
+        }
+        eleUsed.set(idx);
+        return xElements.get(idx).ele;
     }
 
     public List<XEle> getChildXElementsStartWithUpperLetter() {
@@ -110,18 +147,17 @@ public class XElement {
     }
 
     public void printUnused() {
-        for (XAttr xAttr : xAttrs) {
-            if (!xAttr.used) {
-                System.out.printf("%s[%s] = %s 未使用%n", ele.getTagName(), xAttr.attr.getName(), xAttr.attr.getValue());
-            }
+        reportUnused(XDiagnostics.CONSOLE);
+    }
+
+    public void reportUnused(XDiagnostics diagnostics) {
+        for (int i = attrUsed.nextClearBit(0); i < attrs.length; i = attrUsed.nextClearBit(i + 1)) {
+            diagnostics.unusedAttr(ele.getTagName(), attrs[i].getName(), attrs[i].getValue());
         }
 
-        for (XEle xElement : xElements) {
-            if (!xElement.used) {
-                System.out.printf("%s<%s> 未使用%n", ele.getTagName(), xElement.ele.getTagName());
-            }
+        for (int i = eleUsed.nextClearBit(0); i < xElements.size(); i = eleUsed.nextClearBit(i + 1)) {
+            diagnostics.unusedChild(ele.getTagName(), xElements.get(i).ele.getTagName());
         }
     }
 
 }
-
@@ -0,0 +1,87 @@
+package cleanXml;
+
+//枚举名 -> 枚举值，忽略大小写，注册枚举时建好
+//开放寻址，hash直接按字符折叠大小写算，查找时不生成新字符串
+//不可变，加别名时生成新表，XSchema拷贝XClass时直接共用
+final class XEnumTable {
+    private final String name;
+    private final String[] keys;
+    private final Object[] values;
+    private final int mask;
+
+    XEnumTable(String name, Object[] constants) {
+        this(name, constants.length);
+        for (Object c : constants) {
+            put(c.toString(), c); //跟原来一样用toString，大小写不同的同名值前面的优先
+        }
+    }
+
+    private XEnumTable(String name, int count) {
+        this.name = name;
+        int size = Integer.highestOneBit(Math.max(count * 2 - 1, 1)) << 1; //负载不超过一半
+        keys = new String[size];
+        values = new Object[size];
+        mask = size - 1;
+    }
+
+    //加一个别名，别名跟已有的名字冲突时报错
+    XEnumTable withAlias(String alias, Object constant) {
+        Object old = get(alias);
+        if (old != null && old != constant) {
+            throw new IllegalArgumentException(String.format("%s 枚举别名%s跟%s冲突", name, alias, old));
+        }
+
+        int count = 1;
+        for (String key : keys) {
+            if (key != null) {
+                count++;
+            }
+        }
+        XEnumTable t = new XEnumTable(name, count);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                t.put(keys[i], values[i]);
+            }
+        }
+        t.put(alias, constant);
+        return t;
+    }
+
+    //没找到返回null
+    Object get(String str) {
+        if (str == null) {
+            return null;
+        }
+        for (int idx = hash(str) & mask; ; idx = (idx + 1) & mask) {
+            String key = keys[idx];
+            if (key == null) {
+                return null;
+            }
+            if (key.equalsIgnoreCase(str)) {
+                return values[idx];
+            }
+        }
+    }
+
+    private void put(String key, Object value) {
+        for (int idx = hash(key) & mask; ; idx = (idx + 1) & mask) {
+            if (keys[idx] == null) {
+                keys[idx] = key;
+                values[idx] = value;
+                return;
+            }
+            if (keys[idx].equalsIgnoreCase(key)) {
+                return;
+            }
+        }
+    }
+
+    //跟equalsIgnoreCase一致：先转大写再转小写，equalsIgnoreCase相等的hash一定相等
+    private static int hash(String s) {
+        int h = 0;
+        for (int i = 0; i < s.length(); i++) {
+            h = 31 * h + Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+        }
+        return h ^ (h >>> 16);
+    }
+}
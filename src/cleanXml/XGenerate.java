@@ -0,0 +1,13 @@
+package cleanXml;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//标记给XMetaProcessor，编译时生成这个类型（及其构造器形参引用到的类型）的XMetaProvider
+//标在接口上时，同一次编译里的实现类都会记下来，运行时不用再扫描包
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface XGenerate {
+}
@@ -0,0 +1,43 @@
+package cleanXml;
+
+//校验时发现的一个问题，行列号从1开始，不知道时为-1
+public final class XIssue {
+    public enum Level {
+        ERROR,
+        WARNING,
+        UNVALIDATED, //有converter的元素，格式由converter决定，没有校验
+    }
+
+    private final Level level;
+    private final int line;
+    private final int column;
+    private final String message;
+
+    XIssue(Level level, int line, int column, String message) {
+        this.level = level;
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %d:%d %s", level, line, column, message);
+    }
+}
@@ -0,0 +1,34 @@
+package cleanXml;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+//XSchema.loadAll的结果，都按路径排序
+public class XLoadResult {
+    private final Map<Path, Object> objects;
+    private final Map<Path, Exception> errors;
+
+    XLoadResult(Map<Path, Object> objects, Map<Path, Exception> errors) {
+        this.objects = Collections.unmodifiableMap(new TreeMap<>(objects));
+        this.errors = Collections.unmodifiableMap(new TreeMap<>(errors));
+    }
+
+    public Map<Path, Object> getObjects() {
+        return objects;
+    }
+
+    public Map<Path, Exception> getErrors() {
+        return errors;
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(Path path) {
+        return (T) objects.get(path);
+    }
+}
@@ -0,0 +1,198 @@
+package cleanXml;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+//可选的注解处理器：javac -processor cleanXml.XMetaProcessor
+//对@XGenerate标记的类型，生成实现XMetaProvider的XMetaGenerated类和META-INF/services注册文件
+//生成构造器形参名，直接new的Creator，接口的实现类列表；成员变量一般是private，读取仍走MethodHandle
+@SupportedAnnotationTypes("cleanXml.XGenerate")
+public class XMetaProcessor extends AbstractProcessor {
+    private static final String GENERATED_NAME = "XMetaGenerated";
+
+    private boolean generated;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (generated || annotations.isEmpty()) {
+            return false;
+        }
+
+        Set<? extends Element> roots = roundEnv.getElementsAnnotatedWith(XGenerate.class);
+        if (roots.isEmpty()) {
+            return false;
+        }
+
+        List<TypeElement> allTypes = new ArrayList<>();
+        for (Element e : roundEnv.getRootElements()) {
+            collectTypes(e, allTypes);
+        }
+
+        Map<TypeElement, List<TypeElement>> implMap = new LinkedHashMap<>();
+        Map<TypeElement, ExecutableElement> constructorMap = new LinkedHashMap<>();
+        Deque<TypeElement> todo = new ArrayDeque<>();
+        Set<TypeElement> visited = new HashSet<>();
+        for (Element e : roots) {
+            todo.add((TypeElement) e);
+        }
+
+        while (!todo.isEmpty()) {
+            TypeElement type = todo.poll();
+            if (!visited.add(type) || !isAccessible(type)) {
+                continue;
+            }
+
+            switch (type.getKind()) {
+                case INTERFACE -> {
+                    List<TypeElement> impls = new ArrayList<>();
+                    for (TypeElement t : allTypes) {
+                        if (t.getKind() == ElementKind.CLASS && !t.getModifiers().contains(Modifier.ABSTRACT)
+                                && isAccessible(t) && processingEnv.getTypeUtils().isAssignable(
+                                processingEnv.getTypeUtils().erasure(t.asType()),
+                                processingEnv.getTypeUtils().erasure(type.asType()))) {
+                            impls.add(t);
+                            todo.add(t);
+                        }
+                    }
+                    implMap.put(type, impls);
+                }
+                case CLASS -> {
+                    List<ExecutableElement> constructors = new ArrayList<>();
+                    for (ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+                        if (c.getModifiers().contains(Modifier.PUBLIC)) {
+                            constructors.add(c);
+                        }
+                    }
+                    if (constructors.size() != 1) {
+                        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                                type + " 不是只有一个public构造器，跳过", type);
+                        continue;
+                    }
+
+                    ExecutableElement constructor = constructors.get(0);
+                    constructorMap.put(type, constructor);
+                    for (VariableElement p : constructor.getParameters()) {
+                        TypeMirror t = p.asType();
+                        if (t.getKind() == TypeKind.DECLARED) {
+                            DeclaredType dt = (DeclaredType) t;
+                            if (!dt.getTypeArguments().isEmpty()) { //List<X>
+                                t = dt.getTypeArguments().get(0);
+                            }
+                        }
+                        if (t.getKind() == TypeKind.DECLARED) {
+                            TypeElement te = (TypeElement) ((DeclaredType) t).asElement();
+                            if (!te.getQualifiedName().toString().startsWith("java.")) {
+                                todo.add(te);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        String pkg = processingEnv.getElementUtils().getPackageOf(roots.iterator().next()).getQualifiedName().toString();
+        try {
+            writeSource(pkg, implMap, constructorMap);
+            writeService(pkg);
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "生成" + GENERATED_NAME + "失败: " + e);
+        }
+        generated = true;
+        return false;
+    }
+
+    private static void collectTypes(Element e, List<TypeElement> res) {
+        if (e instanceof TypeElement te) {
+            res.add(te);
+            for (Element enclosed : te.getEnclosedElements()) {
+                collectTypes(enclosed, res);
+            }
+        }
+    }
+
+    //生成的代码要能引用这个类型：自己和外层类都是public
+    private static boolean isAccessible(TypeElement type) {
+        Element e = type;
+        while (e instanceof TypeElement) {
+            if (!e.getModifiers().contains(Modifier.PUBLIC)) {
+                return false;
+            }
+            e = e.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private String erasedName(TypeMirror t) {
+        return processingEnv.getTypeUtils().erasure(t).toString();
+    }
+
+    private void writeSource(String pkg, Map<TypeElement, List<TypeElement>> implMap,
+                             Map<TypeElement, ExecutableElement> constructorMap) throws IOException {
+        String fullName = pkg.isEmpty() ? GENERATED_NAME : pkg + "." + GENERATED_NAME;
+        try (Writer w = processingEnv.getFiler().createSourceFile(fullName).openWriter()) {
+            if (!pkg.isEmpty()) {
+                w.write("package " + pkg + ";\n\n");
+            }
+            w.write("import cleanXml.XMetaProvider;\n\n");
+            w.write("import java.util.HashMap;\nimport java.util.Map;\n\n");
+            w.write("//由cleanXml.XMetaProcessor生成，不要修改\n");
+            w.write("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+            w.write("public final class " + GENERATED_NAME + " implements XMetaProvider {\n");
+            w.write("    private static final Map<Class<?>, String[]> paramNames = new HashMap<>();\n");
+            w.write("    private static final Map<Class<?>, Creator> creators = new HashMap<>();\n");
+            w.write("    private static final Map<Class<?>, Class<?>[]> implementations = new HashMap<>();\n\n");
+            w.write("    static {\n");
+            for (Map.Entry<TypeElement, ExecutableElement> e : constructorMap.entrySet()) {
+                String cls = e.getKey().getQualifiedName().toString();
+                List<? extends VariableElement> params = e.getValue().getParameters();
+                StringJoiner names = new StringJoiner(", ");
+                StringJoiner args = new StringJoiner(", ");
+                for (int i = 0; i < params.size(); i++) {
+                    VariableElement p = params.get(i);
+                    names.add("\"" + p.getSimpleName() + "\"");
+                    args.add("(" + erasedName(p.asType()) + ") params[" + i + "]");
+                }
+                w.write("        paramNames.put(" + cls + ".class, new String[]{" + names + "});\n");
+                w.write("        creators.put(" + cls + ".class, params -> new " + cls + "(" + args + "));\n");
+            }
+            for (Map.Entry<TypeElement, List<TypeElement>> e : implMap.entrySet()) {
+                StringJoiner impls = new StringJoiner(", ");
+                for (TypeElement impl : e.getValue()) {
+                    impls.add(impl.getQualifiedName() + ".class");
+                }
+                w.write("        implementations.put(" + e.getKey().getQualifiedName() + ".class, new Class<?>[]{" + impls + "});\n");
+            }
+            w.write("    }\n\n");
+            w.write("    @Override\n    public String[] getParamNames(Class<?> cls) {\n        return paramNames.get(cls);\n    }\n\n");
+            w.write("    @Override\n    public Creator getCreator(Class<?> cls) {\n        return creators.get(cls);\n    }\n\n");
+            w.write("    @Override\n    public Class<?>[] getImplementations(Class<?> interfaceCls) {\n        return implementations.get(interfaceCls);\n    }\n");
+            w.write("}\n");
+        }
+    }
+
+    private void writeService(String pkg) throws IOException {
+        FileObject f = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                "META-INF/services/" + XMetaProvider.class.getName());
+        try (Writer w = f.openWriter()) {
+            w.write((pkg.isEmpty() ? "" : pkg + ".") + GENERATED_NAME + "\n");
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package cleanXml;
+
+//编译时生成的元数据，XData注册时优先使用，不用-parameters
+//接口的实现类列表只是补充，XData仍按scanPkg扫描或读索引，列表里scanPkg外的类不要
+//通过ServiceLoader加载，或XData.metaProvider手动加入；不知道的类型返回null
+public interface XMetaProvider {
+
+    interface Creator {
+        Object create(Object[] params);
+    }
+
+    String[] getParamNames(Class<?> cls); //构造器形参名
+
+    Creator getCreator(Class<?> cls); //直接调用构造器
+
+    Class<?>[] getImplementations(Class<?> interfaceCls); //接口的实现类，只包含同一次编译看得到的
+}
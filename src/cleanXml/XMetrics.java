@@ -0,0 +1,215 @@
+package cleanXml;
+
+import cleanXml.XData.XClass;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+//解析，生成xml的统计，用XData.metrics打开
+//编译schema时把每个XClass的计数器挂到XClass.stats上，没打开时stats为null，热路径上只多一次null判断
+//时间和分配都包括子元素，各类型相加会重复计算，所以只提供次数的总量
+//按Class保存，XData修改后重新编译，计数继续累加
+public final class XMetrics implements XMetricsMXBean {
+    private static final com.sun.management.ThreadMXBean ALLOC_BEAN = allocBean();
+
+    static final class ClassStats {
+        final String name;
+        final LongAdder decodeCount = new LongAdder();
+        final LongAdder decodeNanos = new LongAdder();
+        final LongAdder encodeCount = new LongAdder();
+        final LongAdder encodeNanos = new LongAdder();
+        final LongAdder allocatedBytes = new LongAdder();
+        final LongAdder converterCount = new LongAdder();
+        private final XMetrics owner;
+
+        ClassStats(XMetrics owner, String name) {
+            this.owner = owner;
+            this.name = name;
+        }
+
+        long allocated() {
+            return owner.trackAllocation ? ALLOC_BEAN.getCurrentThreadAllocatedBytes() : 0;
+        }
+
+        void decoded(long startNanos, long startAllocated) {
+            decodeCount.increment();
+            decodeNanos.add(System.nanoTime() - startNanos);
+            if (owner.trackAllocation) {
+                allocatedBytes.add(ALLOC_BEAN.getCurrentThreadAllocatedBytes() - startAllocated);
+            }
+        }
+
+        void encoded(long startNanos) {
+            encodeCount.increment();
+            encodeNanos.add(System.nanoTime() - startNanos);
+        }
+
+        void reset() {
+            decodeCount.reset();
+            decodeNanos.reset();
+            encodeCount.reset();
+            encodeNanos.reset();
+            allocatedBytes.reset();
+            converterCount.reset();
+        }
+    }
+
+    private final boolean trackAllocation;
+    private final Map<Class<?>, ClassStats> stats = new ConcurrentHashMap<>();
+    private final LongAdder scanCount = new LongAdder();
+    private final LongAdder scanNanos = new LongAdder();
+    private final LongAdder compileCount = new LongAdder();
+    private final LongAdder compileNanos = new LongAdder();
+    private ObjectName objectName;
+
+    public XMetrics() {
+        this(false);
+    }
+
+    //trackAllocation需要JVM支持线程分配计数（HotSpot默认支持），每个元素多两次调用
+    public XMetrics(boolean trackAllocation) {
+        this.trackAllocation = trackAllocation && ALLOC_BEAN != null;
+    }
+
+    private static com.sun.management.ThreadMXBean allocBean() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean &&
+                    bean.isThreadAllocatedMemorySupported()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+                return bean;
+            }
+        } catch (LinkageError | UnsupportedOperationException ignored) {
+        }
+        return null;
+    }
+
+    ClassStats statsOf(XClass xClass) {
+        return stats.computeIfAbsent(xClass.rawClass, k -> new ClassStats(this, xClass.tag()));
+    }
+
+    void scanned(long nanos) {
+        scanCount.increment();
+        scanNanos.add(nanos);
+    }
+
+    void compiled(long nanos) {
+        compileCount.increment();
+        compileNanos.add(nanos);
+    }
+
+    public boolean isTrackAllocation() {
+        return trackAllocation;
+    }
+
+    @Override
+    public long getDecodeCount() {
+        return sum(s -> s.decodeCount.sum());
+    }
+
+    @Override
+    public long getEncodeCount() {
+        return sum(s -> s.encodeCount.sum());
+    }
+
+    @Override
+    public long getConverterCount() {
+        return sum(s -> s.converterCount.sum());
+    }
+
+    private long sum(ToLongFunction<ClassStats> f) {
+        long res = 0;
+        for (ClassStats s : stats.values()) {
+            res += f.applyAsLong(s);
+        }
+        return res;
+    }
+
+    @Override
+    public long getScanCount() {
+        return scanCount.sum();
+    }
+
+    @Override
+    public long getScanNanos() {
+        return scanNanos.sum();
+    }
+
+    @Override
+    public long getCompileCount() {
+        return compileCount.sum();
+    }
+
+    @Override
+    public long getCompileNanos() {
+        return compileNanos.sum();
+    }
+
+    @Override
+    public List<XClassMetrics> getClasses() {
+        return snapshot();
+    }
+
+    //按解码时间从大到小
+    public List<XClassMetrics> snapshot() {
+        List<XClassMetrics> res = new ArrayList<>(stats.size());
+        for (ClassStats s : stats.values()) {
+            res.add(new XClassMetrics(s.name, s.decodeCount.sum(), s.decodeNanos.sum(), s.encodeCount.sum(),
+                    s.encodeNanos.sum(), s.allocatedBytes.sum(), s.converterCount.sum()));
+        }
+        res.sort(Comparator.comparingLong(XClassMetrics::getDecodeNanos).reversed()
+                .thenComparing(XClassMetrics::getName));
+        return res;
+    }
+
+    @Override
+    public void reset() {
+        for (ClassStats s : stats.values()) {
+            s.reset();
+        }
+        scanCount.reset();
+        scanNanos.reset();
+        compileCount.reset();
+        compileNanos.reset();
+    }
+
+    //注册到platform MBeanServer，ObjectName为 cleanXml:type=XMetrics,name=name
+    public synchronized void registerMBean(String name) {
+        if (objectName != null) {
+            throw new IllegalStateException("已经注册为" + objectName);
+        }
+        try {
+            ObjectName on = ObjectName.getInstance("cleanXml:type=XMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            objectName = on;
+        } catch (InstanceAlreadyExistsException e) {
+            throw new IllegalArgumentException(String.format("MBean %s 已存在", name), e);
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(objectName);
+        } catch (InstanceNotFoundException ignored) {
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+        objectName = null;
+    }
+}
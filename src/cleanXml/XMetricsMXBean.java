@@ -0,0 +1,24 @@
+package cleanXml;
+
+import java.util.List;
+
+//XMetrics通过JMX暴露的接口，见XMetrics.registerMBean
+public interface XMetricsMXBean {
+    long getDecodeCount();
+
+    long getEncodeCount();
+
+    long getConverterCount();
+
+    long getScanCount();
+
+    long getScanNanos();
+
+    long getCompileCount();
+
+    long getCompileNanos();
+
+    List<XClassMetrics> getClasses();
+
+    void reset();
+}
@@ -0,0 +1,197 @@
+package cleanXml;
+
+//数字的解析和格式化，直接在字符区间上做，不生成中间String
+//只处理常见的简单格式，其他情况（指数，NaN，后缀f等）退回JDK的方法，所以结果和出错信息跟JDK完全一样
+final class XNumbers {
+    private static final float[] FLOAT_POW10 = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+    private static final double[] DOUBLE_POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final long[] LONG_POW10 = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L};
+    private static final int FORMAT_MAX_DECIMALS = 6;
+
+    private XNumbers() {
+    }
+
+    static int parseInt(CharSequence s, int start, int end) {
+        int i = start;
+        boolean neg = false;
+        if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            neg = s.charAt(i) == '-';
+            i++;
+        }
+        if (i == end || end - i > 9) { //9位以内不会溢出
+            return Integer.parseInt(s.subSequence(start, end).toString());
+        }
+        int v = 0;
+        for (; i < end; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                return Integer.parseInt(s.subSequence(start, end).toString());
+            }
+            v = v * 10 + d;
+        }
+        return neg ? -v : v;
+    }
+
+    static long parseLong(CharSequence s, int start, int end) {
+        int i = start;
+        boolean neg = false;
+        if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            neg = s.charAt(i) == '-';
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            return Long.parseLong(s.subSequence(start, end).toString());
+        }
+        long v = 0;
+        for (; i < end; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                return Long.parseLong(s.subSequence(start, end).toString());
+            }
+            v = v * 10 + d;
+        }
+        return neg ? -v : v;
+    }
+
+    static short parseShort(CharSequence s, int start, int end) {
+        int v = parseInt(s, start, end);
+        if (v < Short.MIN_VALUE || v > Short.MAX_VALUE) {
+            return Short.parseShort(s.subSequence(start, end).toString());
+        }
+        return (short) v;
+    }
+
+    static byte parseByte(CharSequence s, int start, int end) {
+        int v = parseInt(s, start, end);
+        if (v < Byte.MIN_VALUE || v > Byte.MAX_VALUE) {
+            return Byte.parseByte(s.subSequence(start, end).toString());
+        }
+        return (byte) v;
+    }
+
+    static boolean parseBoolean(CharSequence s, int start, int end) {
+        if (end - start != 4) {
+            return false;
+        }
+        return (s.charAt(start) | 0x20) == 't' && (s.charAt(start + 1) | 0x20) == 'r' &&
+                (s.charAt(start + 2) | 0x20) == 'u' && (s.charAt(start + 3) | 0x20) == 'e';
+    }
+
+    //快速路径：有效数字 <= 2^24，小数位数 <= 10，这时 m和10^k 都能用float精确表示，一次除法就是正确舍入的结果
+    static float parseFloat(CharSequence s, int start, int end) {
+        int i = start;
+        boolean neg = false;
+        if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            neg = s.charAt(i) == '-';
+            i++;
+        }
+        long m = 0;
+        int digits = 0;
+        int decimals = -1; //-1表示还没遇到小数点
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                m = m * 10 + (c - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+                if (m > (1 << 24)) {
+                    return Float.parseFloat(s.subSequence(start, end).toString());
+                }
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                return Float.parseFloat(s.subSequence(start, end).toString());
+            }
+        }
+        if (digits == 0 || decimals >= FLOAT_POW10.length) {
+            return Float.parseFloat(s.subSequence(start, end).toString());
+        }
+        float v = decimals > 0 ? (float) m / FLOAT_POW10[decimals] : (float) m;
+        return neg ? -v : v;
+    }
+
+    //同parseFloat，有效数字 <= 2^53，小数位数 <= 22
+    static double parseDouble(CharSequence s, int start, int end) {
+        int i = start;
+        boolean neg = false;
+        if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            neg = s.charAt(i) == '-';
+            i++;
+        }
+        long m = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                m = m * 10 + (c - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+                if (m > (1L << 53)) {
+                    return Double.parseDouble(s.subSequence(start, end).toString());
+                }
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                return Double.parseDouble(s.subSequence(start, end).toString());
+            }
+        }
+        if (digits == 0 || decimals >= DOUBLE_POW10.length) {
+            return Double.parseDouble(s.subSequence(start, end).toString());
+        }
+        double v = decimals > 0 ? (double) m / DOUBLE_POW10[decimals] : (double) m;
+        return neg ? -v : v;
+    }
+
+    static char parseChar(CharSequence s, int start, int end) {
+        if (end - start != 1) {
+            throw new IllegalArgumentException(String.format("\"%s\" 不是一个字符", s.subSequence(start, end)));
+        }
+        return s.charAt(start);
+    }
+
+    //结果跟String.valueOf(f)一样
+    //快速路径：1e-3 <= |f| < 1e7 时JDK不用指数形式；从0位小数开始找，第一个能唯一还原成f的k位小数就是JDK的输出
+    //只有一个候选时才用，有多个候选时JDK选哪个依赖实现，退回JDK；已对这个范围内所有float跟Float.toString逐个比对过
+    static void appendFloat(StringBuilder sb, float f) {
+        float a = Math.abs(f);
+        if (a >= 1e-3f && a < 1e7f) {
+            for (int k = 0; k <= FORMAT_MAX_DECIMALS; k++) {
+                long m = Math.round((double) a * FLOAT_POW10[k]);
+                if (m > (1 << 24)) {
+                    break;
+                }
+                float p = FLOAT_POW10[k];
+                if ((float) m / p == a && (float) (m - 1) / p != a && (float) (m + 1) / p != a) {
+                    if (f < 0) {
+                        sb.append('-');
+                    }
+                    long pow = LONG_POW10[k];
+                    sb.append(m / pow).append('.');
+                    if (k == 0) {
+                        sb.append('0');
+                    } else {
+                        long frac = m % pow;
+                        for (long p10 = pow / 10; p10 > frac && p10 > 1; p10 /= 10) {
+                            sb.append('0');
+                        }
+                        sb.append(frac);
+                    }
+                    return;
+                }
+            }
+        }
+        sb.append(f);
+    }
+
+    static String toString(float f) {
+        StringBuilder sb = new StringBuilder(16);
+        appendFloat(sb, f);
+        return sb.toString();
+    }
+}
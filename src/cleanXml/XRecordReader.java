@@ -0,0 +1,186 @@
+package cleanXml;
+
+import cleanXml.XData.XClass;
+import org.w3c.dom.Element;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+//很大的xml，根元素只是容器，下面是大量同级的记录；边读边解码，每读完一条记录就返回，内存跟文件大小无关
+//根元素不需要注册；没注册的记录跳过，当作未使用的子元素报给XDiagnostics
+//batchSize > 1 时，先按StAX读一批记录成DOM，再并行解码，按原顺序返回；内存跟一批的大小有关
+//并行解码用传进来的executor，没传时自己建一个ForkJoinPool，close时关掉，不占用公共池
+public final class XRecordReader<T> implements Iterator<T>, Closeable {
+    private final XSchema schema;
+    private final XStaxReader stax;
+    private final InputStream in;
+    private final int batchSize;
+    private final Executor executor;
+    private final ForkJoinPool ownPool; //没传executor时自己建的
+    private String rootTag;
+    private final List<Object> buffered = new ArrayList<>();
+    private int index;
+    private boolean end;
+
+    //executor为null且batchSize > 1时，自己建一个线程数为cpu数的ForkJoinPool
+    XRecordReader(XSchema schema, InputStream in, int batchSize, Executor executor) {
+        this.schema = schema;
+        this.stax = new XStaxReader(schema, XStaxReader.open(in));
+        this.in = in;
+        this.batchSize = batchSize;
+        if (batchSize > 1 && executor == null) {
+            ownPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+            this.executor = ownPool;
+        } else {
+            ownPool = null;
+            this.executor = executor;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (index >= buffered.size() && !end) {
+            fill();
+        }
+        return index < buffered.size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Object obj = buffered.get(index);
+        buffered.set(index++, null); //尽早释放
+        return (T) obj;
+    }
+
+    //关闭stream时关闭文件
+    public Stream<T> stream() {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        end = true;
+        buffered.clear();
+        stax.close();
+        if (ownPool != null) {
+            ownPool.shutdown();
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void fill() {
+        buffered.clear();
+        index = 0;
+        try {
+            if (rootTag == null) {
+                if (!stax.enterRoot()) {
+                    end = true;
+                    return;
+                }
+                rootTag = stax.currentTag();
+            }
+
+            if (batchSize <= 1) {
+                if (!stax.nextRecord()) {
+                    end = true;
+                    return;
+                }
+                XClass xClass = stax.recordXClass(rootTag);
+                if (xClass != null) {
+                    buffered.add(stax.readRecord(xClass));
+                }
+                return;
+            }
+
+            XClass[] classes = new XClass[batchSize];
+            Element[] elements = new Element[batchSize];
+            int[] lines = new int[batchSize]; //DOM里没有行号，先记下每条记录开始的行
+            int n = 0;
+            while (n < batchSize) {
+                if (!stax.nextRecord()) {
+                    end = true;
+                    break;
+                }
+                int line = stax.currentLine();
+                XClass xClass = stax.recordXClass(rootTag);
+                if (xClass != null) {
+                    classes[n] = xClass;
+                    lines[n] = line;
+                    elements[n++] = stax.readRecordDom();
+                }
+            }
+            decodeBatch(classes, elements, lines, n);
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //分成cpu数个任务交给executor，出错时按记录顺序抛第一个
+    private void decodeBatch(XClass[] classes, Element[] elements, int[] lines, int n) {
+        Object[] objs = new Object[n];
+        RuntimeException[] errors = new RuntimeException[n];
+        int tasks = Math.min(n, Runtime.getRuntime().availableProcessors());
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks];
+        for (int t = 0; t < tasks; t++) {
+            int first = t;
+            futures[t] = CompletableFuture.runAsync(() -> {
+                for (int i = first; i < n; i += tasks) {
+                    try {
+                        objs[i] = decode(classes[i], elements[i], lines[i]);
+                    } catch (RuntimeException e) {
+                        errors[i] = e;
+                    }
+                }
+            }, executor);
+        }
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            throw XData.rethrow(e.getCause());
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (errors[i] != null) {
+                throw errors[i];
+            }
+            buffered.add(objs[i]);
+        }
+    }
+
+    private Object decode(XClass xClass, Element ele, int line) {
+        try {
+            Object obj = schema.fromXmlElementToObj(xClass, ele);
+            if (obj == null) {
+                throw XDecodeException.of(ele, "反序列化失败:\n" + DomUtils.elementToString(ele));
+            }
+            return obj;
+        } catch (XDecodeException e) {
+            e.setLineIfAbsent(line);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package cleanXml;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
+
+//跟XRecordReader对应：写一个根元素做容器，记录一条条追加进去，每条直接按XStreamWriter写出，不建DOM
+//缓冲区满了就写到底层，内存只跟一条记录有关；close时写根元素结束标签并关闭底层输出
+//一条记录写到一半出错时，已经写出去的部分收不回来，之后的write都拒绝，close也不再写结束标签
+//不是线程安全的
+public final class XRecordWriter implements Closeable, Flushable {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final Writer out;
+    private final XStreamWriter writer;
+    private final String rootTag;
+    private long count;
+    private boolean closed;
+    private RuntimeException failed; //写到一半出错的那次异常
+
+    XRecordWriter(XSchema schema, OutputStream out, String rootTag, boolean indent) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), CHUNK_SIZE);
+        this.writer = new XStreamWriter(schema, this.out, indent);
+        this.rootTag = rootTag;
+        try {
+            writer.startRoot(rootTag);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    XRecordWriter(XSchema schema, WritableByteChannel channel, String rootTag, boolean indent) {
+        this(schema, Channels.newOutputStream(channel), rootTag, indent);
+    }
+
+    public void write(Object obj) {
+        if (closed) {
+            throw new IllegalStateException("已经关闭了");
+        }
+        if (failed != null) {
+            throw new IllegalStateException("之前的记录写到一半出错了，输出已经不完整", failed);
+        }
+        boolean ok;
+        try {
+            ok = writer.write(obj);
+        } catch (IOException e) {
+            failed = new UncheckedIOException(e);
+            throw failed;
+        } catch (RuntimeException e) {
+            failed = e;
+            throw e;
+        }
+        if (!ok) { //根对象类型没注册时什么都还没写，可以继续写别的
+            throw new IllegalArgumentException(String.format("%s 类型为%s，序列化到xml失败", obj, obj.getClass()));
+        }
+        count++;
+    }
+
+    public void writeAll(Stream<?> objs) {
+        objs.forEachOrdered(this::write);
+    }
+
+    //每次只request一条，写完再要下一条；返回的future在publisher结束时完成，值为这次写的条数，不会close
+    public CompletableFuture<Long> writeAll(Flow.Publisher<?> publisher) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<Object>() {
+            private Flow.Subscription subscription;
+            private long written;
+
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription = s;
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(Object item) {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    write(item);
+                } catch (RuntimeException e) {
+                    subscription.cancel();
+                    future.completeExceptionally(e);
+                    return;
+                }
+                written++;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                future.completeExceptionally(t);
+            }
+
+            @Override
+            public void onComplete() {
+                future.complete(written);
+            }
+        });
+        return future;
+    }
+
+    //已写的记录条数
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            try {
+                if (failed == null) {
+                    writer.endRoot(rootTag);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package cleanXml;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+//目录热加载，结果跟XSchema.loadAll一样是XLoadResult
+//WatchService发现改动的文件，内容hash没变的跳过；改了的用DOM重新解析
+//每个element按 tag，属性，子元素hash，文本 算出子树hash，hash相同的子树直接用之前构造好的对象，不再构造，所以对象要是不可变的
+//每次加载完生成新的XLoadResult，用volatile发布，读的线程拿到的总是完整的一份
+public final class XReloader implements Closeable {
+    private static final long DEBOUNCE_MILLIS = 50; //编辑器保存一次常有多个事件，等一会合并
+
+    private static class FileState {
+        String contentHash;
+        Set<String> subtreeHashes = Set.of(); //这个文件里所有子树的hash
+        Object obj;
+        Exception error;
+    }
+
+    private static class Subtree {
+        int refs; //有几个文件包含这个子树
+        Object obj; //包装element等不对应对象的为null
+    }
+
+    private final XSchema schema;
+    private final Path dir;
+    private final PathMatcher matcher;
+    private final Map<Path, FileState> files = new HashMap<>();
+    private final Map<String, Subtree> subtrees = new HashMap<>();
+    private final MessageDigest md;
+    private volatile XLoadResult snapshot;
+
+    private WatchService watchService;
+    private Thread watchThread;
+    private Consumer<XLoadResult> listener;
+
+    public XReloader(XSchema schema, Path dir, String glob) {
+        this.schema = schema;
+        this.dir = dir;
+        this.matcher = dir.getFileSystem().getPathMatcher("glob:" + glob);
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        reload();
+    }
+
+    public XLoadResult snapshot() {
+        return snapshot;
+    }
+
+    //重新检查整个目录
+    public synchronized XLoadResult reload() {
+        Set<Path> exists = new HashSet<>();
+        for (Path path : walk(dir)) {
+            exists.add(path);
+            update(path);
+        }
+        files.keySet().removeIf(path -> {
+            if (!exists.contains(path)) {
+                release(files.get(path).subtreeHashes);
+                return true;
+            }
+            return false;
+        });
+        return publish();
+    }
+
+    //只检查这些路径，可以是文件或目录，不存在的表示删除了
+    public synchronized XLoadResult reload(Collection<Path> paths) {
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                for (Path p : walk(path)) {
+                    update(p);
+                }
+            } else if (Files.isRegularFile(path) && matcher.matches(path.getFileName())) {
+                update(path);
+            } else {
+                files.keySet().removeIf(p -> {
+                    if (p.startsWith(path) && !Files.exists(p)) {
+                        release(files.get(p).subtreeHashes);
+                        return true;
+                    }
+                    return false;
+                });
+            }
+        }
+        return publish();
+    }
+
+    public void start() {
+        start(null);
+    }
+
+    //启动后台线程监视目录，每次加载完调用listener
+    public synchronized void start(Consumer<XLoadResult> listener) {
+        if (watchService != null) {
+            throw new IllegalStateException("已经启动了");
+        }
+        this.listener = listener;
+        try {
+            watchService = dir.getFileSystem().newWatchService();
+            registerAll(watchService, dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        watchThread = new Thread(this::watchLoop, "cleanXml-reloader");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+            }
+            watchThread.interrupt();
+            watchService = null;
+        }
+    }
+
+    private void watchLoop() {
+        WatchService ws = watchService;
+        try {
+            while (true) {
+                WatchKey key = ws.take();
+                Set<Path> changed = new HashSet<>();
+                boolean overflow = false;
+                do {
+                    Path keyDir = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            overflow = true;
+                            continue;
+                        }
+                        Path path = keyDir.resolve((Path) event.context());
+                        if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                            registerAll(ws, path);
+                        }
+                        changed.add(path);
+                    }
+                    key.reset();
+                    key = ws.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+
+                XLoadResult res;
+                try {
+                    res = overflow ? reload() : reload(changed);
+                } catch (UncheckedIOException e) { //遍历时目录被删了之类，等下次事件
+                    continue;
+                }
+                Consumer<XLoadResult> l = listener;
+                if (l != null) {
+                    l.accept(res);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException | IOException ignored) {
+        }
+    }
+
+    private static void registerAll(WatchService ws, Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path d : walk.filter(Files::isDirectory).toList()) {
+                d.register(ws, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            }
+        }
+    }
+
+    private List<Path> walk(Path root) {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(path -> Files.isRegularFile(path) && matcher.matches(path.getFileName())).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private XLoadResult publish() {
+        Map<Path, Object> objects = new HashMap<>();
+        Map<Path, Exception> errors = new HashMap<>();
+        for (Map.Entry<Path, FileState> e : files.entrySet()) {
+            FileState state = e.getValue();
+            if (state.error != null) {
+                errors.put(e.getKey(), state.error);
+            } else {
+                objects.put(e.getKey(), state.obj);
+            }
+        }
+        XLoadResult res = new XLoadResult(objects, errors);
+        snapshot = res;
+        return res;
+    }
+
+    private void update(Path path) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(path);
+        } catch (IOException e) {
+            FileState state = new FileState();
+            state.error = e;
+            replace(path, state);
+            return;
+        }
+
+        String contentHash = HexFormat.of().formatHex(md.digest(bytes));
+        FileState old = files.get(path);
+        if (old != null && contentHash.equals(old.contentHash)) {
+            return;
+        }
+
+        FileState state = new FileState();
+        state.contentHash = contentHash;
+        try {
+            Element root = DomUtils.parse(new ByteArrayInputStream(bytes));
+            Map<Element, String> hashes = new IdentityHashMap<>();
+            digest(root, hashes);
+            state.subtreeHashes = new HashSet<>(hashes.values());
+            acquire(state.subtreeHashes); //先加引用，解码时才能把对象放进去
+
+            state.obj = schema.fromXmlElementToObj(root, new XSubtreeCache() {
+                @Override
+                public Object get(Element ele) {
+                    return subtrees.get(hashes.get(ele)).obj;
+                }
+
+                @Override
+                public void put(Element ele, Object obj) {
+                    subtrees.get(hashes.get(ele)).obj = obj;
+                }
+            });
+            if (state.obj == null) {
+                state.error = new IllegalArgumentException(path + " 根元素没有注册");
+            }
+        } catch (Exception e) {
+            state.error = e;
+        }
+        if (state.error != null) {
+            release(state.subtreeHashes);
+            state.subtreeHashes = Set.of();
+        }
+        replace(path, state);
+    }
+
+    private void replace(Path path, FileState state) {
+        FileState old = files.put(path, state);
+        if (old != null) {
+            release(old.subtreeHashes);
+        }
+    }
+
+    private void acquire(Set<String> hashes) {
+        for (String h : hashes) {
+            subtrees.computeIfAbsent(h, k -> new Subtree()).refs++;
+        }
+    }
+
+    private void release(Set<String> hashes) {
+        for (String h : hashes) {
+            Subtree s = subtrees.get(h);
+            if (--s.refs == 0) {
+                subtrees.remove(h);
+            }
+        }
+    }
+
+    //先算子元素，再算自己；只有空白的文本不算，这样缩进不同也一样
+    private String digest(Element ele, Map<Element, String> hashes) {
+        NodeList childNodes = ele.getChildNodes();
+        for (int i = 0; i < childNodes.getLength(); i++) {
+            if (childNodes.item(i) instanceof Element child) {
+                digest(child, hashes);
+            }
+        }
+
+        md.reset();
+        digestString(ele.getTagName());
+        NamedNodeMap attributes = ele.getAttributes();
+        String[][] attrs = new String[attributes.getLength()][];
+        for (int i = 0; i < attrs.length; i++) {
+            Attr a = (Attr) attributes.item(i);
+            attrs[i] = new String[]{a.getName(), a.getValue()};
+        }
+        Arrays.sort(attrs, Comparator.comparing(a -> a[0]));
+        for (String[] a : attrs) {
+            digestString(a[0]);
+            digestString(a[1]);
+        }
+        for (int i = 0; i < childNodes.getLength(); i++) {
+            Node node = childNodes.item(i);
+            if (node instanceof Element child) {
+                md.update((byte) 'E');
+                digestString(hashes.get(child));
+            } else if (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE) {
+                if (!node.getNodeValue().isBlank()) {
+                    md.update((byte) 'T');
+                    digestString(node.getNodeValue());
+                }
+            }
+        }
+        String h = HexFormat.of().formatHex(md.digest());
+        hashes.put(ele, h);
+        return h;
+    }
+
+    //带长度，避免拼接后混淆
+    private void digestString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int len = bytes.length;
+        md.update(new byte[]{(byte) (len >>> 24), (byte) (len >>> 16), (byte) (len >>> 8), (byte) len});
+        md.update(bytes);
+    }
+}
@@ -0,0 +1,553 @@
+package cleanXml;
+
+import cleanXml.XData.XClass;
+import cleanXml.XData.XClassType;
+import cleanXml.XData.XParam;
+import cleanXml.XData.XType;
+import org.w3c.dom.Element;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+//XData编译出来的不可变schema，可以在多个线程间共享，不用加锁
+//XClass，XParam都从XData里复制一份，构造完后不再修改，通过final字段安全发布；XData之后的修改不影响这里
+@SuppressWarnings("unused")
+public final class XSchema {
+    private final Map<Class<?>, XClass> xClassMap;
+    private final Map<String, XClass> tagToXClassMap;
+    final XDiagnostics unusedDiagnostics; //不跟踪未使用的属性，子元素时为null
+
+    XSchema(Collection<XClass> registered, int stringPoolCapacity, XDiagnostics diagnostics, boolean trackUnused,
+            XMetrics metrics) {
+        unusedDiagnostics = trackUnused && diagnostics != XDiagnostics.NONE ? diagnostics : null;
+        XStringPool stringPool = stringPoolCapacity > 0 ? new XStringPool(stringPoolCapacity) : null;
+        Map<XClass, XClass> copies = new IdentityHashMap<>();
+        for (XClass xClass : registered) {
+            copies.put(xClass, xClass.copy());
+        }
+
+        Map<Class<?>, XClass> classMap = new IdentityHashMap<>();
+        Map<String, XClass> tagMap = new HashMap<>();
+        for (XClass xClass : copies.values()) {
+            xClass.link(copies);
+            classMap.put(xClass.rawClass, xClass);
+        }
+
+        for (XClass xClass : classMap.values()) {
+            if (xClass.xClassType == XClassType.CLASS) {
+                //检查是否能生成
+                checkOne(xClass);
+                initInstancing(xClass, stringPool);
+                xClass.decodeSteps = XDomPlan.decodeSteps(xClass);
+                xClass.encodeSteps = XDomPlan.encodeSteps(xClass);
+                if (!xClass.needDom) {
+                    xClass.streamPlan = new XStreamPlan(xClass);
+                }
+                if (metrics != null) {
+                    xClass.stats = metrics.statsOf(xClass);
+                }
+                //cache下来
+                String tag = xClass.tag();
+                if (tagMap.put(tag, xClass) != null) {
+                    throw new IllegalStateException(tag + " tag重复了");
+                }
+            } else if (xClass.xClassType == XClassType.INTERFACE) {
+                Map<String, XClass> implTagMap = new HashMap<>();
+                for (XClass implClass : xClass.xImplClassList) {
+                    implTagMap.put(implClass.tag(), implClass);
+                }
+                xClass.implTagMap = Map.copyOf(implTagMap);
+            }
+        }
+
+        xClassMap = Collections.unmodifiableMap(classMap);
+        tagToXClassMap = Map.copyOf(tagMap);
+    }
+
+    private static void checkOne(XClass xClass) {
+        if (xClass.converter != null) {
+            xClass.needDom = true;
+            return;
+        }
+
+        Set<Class<?>> listClassSet = new HashSet<>();
+        List<XParam> testXParams = new ArrayList<>();
+        boolean explicit = false;
+        for (XParam xParam : xClass.xParamList) {
+            if ((!xParam.explicit) &&
+                    (xParam.xType == XType.LIST || xParam.xType == XType.CLASS) &&
+                    xParam.xClass.xClassType != XClassType.ENUM) {
+                //默认全展开作为子element,但万一有2个类型相同，xml一定要包一层参数名为tag的element
+                testXParams.add(xParam);
+                if (!listClassSet.add(xParam.xClass.rawClass)) {
+                    explicit = true;
+                    break;
+                }
+            }
+        }
+
+        if (explicit) {
+            for (XParam xParam : testXParams) {
+                xParam.explicit = true;
+            }
+        }
+
+        Map<String, Integer> attrSlotMap = new HashMap<>();
+        Map<String, Integer> explicitSlotMap = new HashMap<>();
+        for (int i = 0; i < xClass.xParamList.size(); i++) {
+            XParam xParam = xClass.xParamList.get(i);
+            if (xParam.converter != null) {
+                xClass.needDom = true;
+            }
+            if (xParam.isAttr()) {
+                attrSlotMap.put(xParam.attr(), i);
+            } else if (xParam.explicit) {
+                explicitSlotMap.put(xParam.attr(), i);
+            }
+        }
+        xClass.attrSlotMap = Map.copyOf(attrSlotMap);
+        xClass.explicitSlotMap = Map.copyOf(explicitSlotMap);
+    }
+
+    private static void initInstancing(XClass xClass, XStringPool stringPool) {
+        if (xClass.canonical) {
+            xClass.canonicalPool = new XCanonicalPool(xClass.xParamList, xClass.canonicalCapacity);
+        }
+        if (stringPool != null && xClass.xParamList != null) {
+            int[] slots = new int[xClass.xParamList.size()];
+            int count = 0;
+            for (int i = 0; i < slots.length; i++) {
+                if (xClass.xParamList.get(i).xType == XType.STR) {
+                    slots[count++] = i;
+                }
+            }
+            if (count > 0) {
+                xClass.stringPool = stringPool;
+                xClass.strSlots = Arrays.copyOf(slots, count);
+            }
+        }
+    }
+
+    XClass getXClassByTag(String tag) {
+        return tagToXClassMap.get(tag);
+    }
+
+    public <T> T fromXmlString(String xml) {
+        return fromXmlReader(new StringReader(xml));
+    }
+
+    //用StAX流式解析，不建DOM
+    @SuppressWarnings("unchecked")
+    public <T> T fromXmlReader(Reader reader) {
+        return (T) new XStaxReader(this, XStaxReader.open(reader)).readRoot();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T fromXmlStream(InputStream in) {
+        return (T) new XStaxReader(this, XStaxReader.open(in)).readRoot();
+    }
+
+    //根元素下的每个子元素是一条记录，边读边解码，见XRecordReader；用完要close
+    public <T> XRecordReader<T> recordReader(InputStream in) {
+        return new XRecordReader<>(this, in, 1, null);
+    }
+
+    //每次读batchSize条记录，在reader自己的线程池里并行解码
+    public <T> XRecordReader<T> recordReader(InputStream in, int batchSize) {
+        return new XRecordReader<>(this, in, batchSize, null);
+    }
+
+    //每次读batchSize条记录，在executor里并行解码，executor由调用方管理
+    public <T> XRecordReader<T> recordReader(InputStream in, int batchSize, Executor executor) {
+        return new XRecordReader<>(this, in, batchSize, Objects.requireNonNull(executor));
+    }
+
+    //关闭stream时关闭文件
+    public <T> Stream<T> streamRecords(Path file) {
+        return streamRecords(file, 1);
+    }
+
+    public <T> Stream<T> streamRecords(Path file, int batchSize) {
+        return streamRecords(file, batchSize, null);
+    }
+
+    //executor为null时用reader自己的线程池
+    public <T> Stream<T> streamRecords(Path file, int batchSize, Executor executor) {
+        try {
+            return new XRecordReader<T>(this, new BufferedInputStream(Files.newInputStream(file)), batchSize, executor).stream();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public XLoadResult loadAll(Path dir) {
+        return loadAll(dir, "*.xml", Runtime.getRuntime().availableProcessors());
+    }
+
+    //并行加载dir下（包括子目录）文件名匹配glob的所有文件，单个文件出错不影响其他文件
+    public XLoadResult loadAll(Path dir, String glob, int parallelism) {
+        List<Path> files = listFiles(dir, glob);
+        Map<Path, Object> objects = new ConcurrentHashMap<>();
+        Map<Path, Exception> errors = new ConcurrentHashMap<>();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> files.parallelStream().forEach(path -> {
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+                    Object obj = fromXmlStream(in);
+                    if (obj != null) {
+                        objects.put(path, obj);
+                    } else {
+                        errors.put(path, new IllegalArgumentException(path + " 根元素没有注册"));
+                    }
+                } catch (Exception e) {
+                    errors.put(path, e);
+                }
+            })).join();
+        } finally {
+            pool.shutdown();
+        }
+        return new XLoadResult(objects, errors);
+    }
+
+    //只校验不构造对象，收集所有错误和未使用的属性，子元素，见XValidator
+    public List<XIssue> validate(Reader reader) {
+        return new XValidator(this, XStaxReader.open(reader)).validateRoot();
+    }
+
+    public List<XIssue> validate(InputStream in) {
+        return new XValidator(this, XStaxReader.open(in)).validateRoot();
+    }
+
+    public XValidateResult validateAll(Path dir) {
+        return validateAll(dir, "*.xml", Runtime.getRuntime().availableProcessors());
+    }
+
+    //并行校验dir下（包括子目录）文件名匹配glob的所有文件，读文件失败也记为该文件的错误
+    public XValidateResult validateAll(Path dir, String glob, int parallelism) {
+        List<Path> files = listFiles(dir, glob);
+        Map<Path, List<XIssue>> issues = new ConcurrentHashMap<>();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> files.parallelStream().forEach(path -> {
+                List<XIssue> list;
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+                    list = validate(in);
+                } catch (Exception e) {
+                    list = List.of(new XIssue(XIssue.Level.ERROR, -1, -1, e.toString()));
+                }
+                if (!list.isEmpty()) {
+                    issues.put(path, list);
+                }
+            })).join();
+        } finally {
+            pool.shutdown();
+        }
+        return new XValidateResult(files.size(), issues);
+    }
+
+    private static List<Path> listFiles(Path dir, String glob) {
+        PathMatcher matcher = dir.getFileSystem().getPathMatcher("glob:" + glob);
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.filter(path -> Files.isRegularFile(path) && matcher.matches(path.getFileName())).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //监视dir，改动的文件自动重新加载，见XReloader
+    public XReloader reloader(Path dir, String glob) {
+        return new XReloader(this, dir, glob);
+    }
+
+    @SuppressWarnings({"unchecked", "unused"})
+    public <T> T fromXmlElement(Element ele) {
+        return (T) fromXmlElementToObj(ele);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T fromXmlElementAssure(Element ele) {
+        Object t = fromXmlElementToObj(ele);
+        if (t == null) {
+            throw new RuntimeException("反序列化失败:\n" + DomUtils.elementToString(ele));
+        }
+        return (T) t;
+    }
+
+    public Object fromXmlElementToObj(Element ele) {
+        return fromXmlElementToObj(ele, null);
+    }
+
+    //cache不为null时，内容相同的子树直接用已经构造好的对象
+    Object fromXmlElementToObj(Element ele, XSubtreeCache cache) {
+        if (ele == null) {
+            return null;
+        }
+
+        XClass xClass = tagToXClassMap.get(ele.getTagName());
+        if (xClass == null) {
+            return null;
+        }
+        return fromXmlElementToObj(xClass, ele, cache);
+    }
+
+    Object fromXmlElementAssure(Element ele, XSubtreeCache cache) {
+        Object t = fromXmlElementToObj(ele, cache);
+        if (t == null) {
+            throw XDecodeException.of(ele, "反序列化失败:\n" + DomUtils.elementToString(ele));
+        }
+        return t;
+    }
+
+    Object fromXmlElementAssure(XClass xClass, Element ele, XSubtreeCache cache) {
+        Object t = fromXmlElementToObj(xClass, ele, cache);
+        if (t == null) {
+            throw XDecodeException.of(ele, "反序列化失败:\n" + DomUtils.elementToString(ele));
+        }
+        return t;
+    }
+
+    //xClass已经按ele的tag找好
+    Object fromXmlElementToObj(XClass xClass, Element ele) {
+        return fromXmlElementToObj(xClass, ele, null);
+    }
+
+    private Object fromXmlElementToObj(XClass xClass, Element ele, XSubtreeCache cache) {
+        if (cache == null) {
+            return decode(xClass, ele, null);
+        }
+        Object res = cache.get(ele);
+        if (res == null) {
+            res = decode(xClass, ele, cache);
+            if (res != null) {
+                cache.put(ele, res);
+            }
+        }
+        return res;
+    }
+
+    //统计直接写在这里，不多包一层调用，嵌套很深时不多占栈
+    private Object decode(XClass xClass, Element ele, XSubtreeCache cache) {
+        XMetrics.ClassStats stats = xClass.stats;
+        long allocated = 0;
+        long start = 0;
+        if (stats != null) {
+            allocated = stats.allocated();
+            start = System.nanoTime();
+        }
+
+        XElement xEle = new XElement(ele);
+        if (xClass.converter != null) {
+            countConverter(xClass);
+            Object res = xClass.converter.fromXmlElement(xEle);
+            if (res != null) {
+                if (unusedDiagnostics != null) {
+                    xEle.reportUnused(unusedDiagnostics);
+                }
+                if (stats != null) {
+                    stats.decoded(start, allocated);
+                }
+                return res;
+            }
+        }
+
+        XDomPlan.DecodeStep[] steps = xClass.decodeSteps;
+        if (steps == null) {
+            return null;
+        }
+
+        XDomPlan.DecodeState st = new XDomPlan.DecodeState(this, xClass, ele, xEle, cache);
+        Object[] params = new Object[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            params[i] = steps[i].decode(st);
+        }
+
+        if (unusedDiagnostics != null) {
+            xEle.reportUnused(unusedDiagnostics);
+        }
+
+        Object res = xClass.newInstance(params);
+        if (stats != null) {
+            stats.decoded(start, allocated);
+        }
+        return res;
+    }
+
+    static void countConverter(XClass xClass) {
+        if (xClass.stats != null) {
+            xClass.stats.converterCount.increment();
+        }
+    }
+
+    XClass getXClass(Class<?> cls) {
+        return xClassMap.get(cls);
+    }
+
+    public String toXmlString(Object obj) {
+        StringWriter writer = new StringWriter();
+        if (!toXml(obj, writer, true)) {
+            return null;
+        }
+        return writer.toString();
+    }
+
+    //不建DOM，直接写到writer，返回是否成功
+    public boolean toXml(Object obj, Writer writer, boolean indent) {
+        try {
+            return new XStreamWriter(this, writer, indent).write(obj);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public boolean toXml(Object obj, OutputStream out, boolean indent) {
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            boolean ok = new XStreamWriter(this, writer, indent).write(obj);
+            writer.flush();
+            return ok;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //二进制格式，见XBinaryWriter；对象没注册返回null
+    public byte[] toBinary(Object obj) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!toBinary(obj, out)) {
+            return null;
+        }
+        return out.toByteArray();
+    }
+
+    public boolean toBinary(Object obj, OutputStream out) {
+        XBinaryWriter writer = new XBinaryWriter(this);
+        if (!writer.write(obj)) {
+            return false;
+        }
+        try {
+            writer.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    public <T> T fromBinary(byte[] data) {
+        return fromBinary(ByteBuffer.wrap(data));
+    }
+
+    //从buf的position开始读，读完position在对象末尾
+    @SuppressWarnings("unchecked")
+    public <T> T fromBinary(ByteBuffer buf) {
+        return (T) new XBinaryReader(this, buf).readRoot();
+    }
+
+    public <T> T fromBinary(InputStream in) {
+        try {
+            return fromBinary(in.readAllBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //xml文件转成二进制文件，经过对象转换，只要schema一致就不丢信息
+    public void xmlToBinary(Path xmlFile, Path binaryFile) {
+        Object obj;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(xmlFile))) {
+            obj = fromXmlStream(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (obj == null) {
+            throw new IllegalArgumentException(xmlFile + " 根元素没有注册");
+        }
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(binaryFile))) {
+            toBinary(obj, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void binaryToXml(Path binaryFile, Path xmlFile) {
+        Object obj;
+        try {
+            obj = fromBinary(Files.readAllBytes(binaryFile));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(xmlFile))) {
+            toXml(obj, out, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //多个根对象按key存成一个文件，见XArchive
+    public void writeArchive(Map<String, ?> objects, Path file) {
+        XArchive.write(this, objects, file);
+    }
+
+    public XArchive openArchive(Path file) {
+        return XArchive.open(this, file);
+    }
+
+    //rootTag做容器，记录一条条追加写入，见XRecordWriter；用完要close
+    public XRecordWriter recordWriter(OutputStream out, String rootTag, boolean indent) {
+        return new XRecordWriter(this, out, rootTag, indent);
+    }
+
+    public XRecordWriter recordWriter(WritableByteChannel channel, String rootTag, boolean indent) {
+        return new XRecordWriter(this, channel, rootTag, indent);
+    }
+
+    public void toXmlElementAssure(Object obj, Element parentEle) {
+        if (!toXmlElement(obj, parentEle)) {
+            throw new RuntimeException(String.format("%s 类型为%s，序列化到xml失败", obj, obj.getClass()));
+        }
+    }
+
+    public boolean toXmlElement(Object obj, Element parentEle) {
+        XClass xClass = xClassMap.get(obj.getClass());
+        if (xClass == null) {
+            return false;
+        }
+
+        XMetrics.ClassStats stats = xClass.stats;
+        long start = stats != null ? System.nanoTime() : 0;
+        if (xClass.converter != null) {
+            countConverter(xClass);
+            boolean res = xClass.converter.toXmlElement(obj, parentEle);
+            if (res) {
+                if (stats != null) {
+                    stats.encoded(start);
+                }
+                return true;
+            }
+        }
+
+        XDomPlan.EncodeStep[] steps = xClass.encodeSteps;
+        if (steps == null) {
+            return false;
+        }
+
+        Element ele = DomUtils.newChild(parentEle, xClass.tag());
+        for (XDomPlan.EncodeStep step : steps) {
+            step.encode(this, obj, ele);
+        }
+        if (stats != null) {
+            stats.encoded(start);
+        }
+
+        return true;
+    }
+}
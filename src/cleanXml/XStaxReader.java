@@ -0,0 +1,371 @@
+package cleanXml;
+
+import cleanXml.XData.XClass;
+import cleanXml.XData.XParam;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+//不建DOM，直接从StAX事件流按XClass/XParam组装构造器参数
+//匹配规则跟XSchema.fromXmlElementToObj一致：按顺序，noOrder，explicit
+//子元素在流过时就决定归属哪个形参，只有被用到的子元素才会构造；出错时马上抛出
+class XStaxReader {
+    private static final ThreadLocal<XMLInputFactory> inputFactory = ThreadLocal.withInitial(XMLInputFactory::newFactory);
+
+    private final XSchema schema;
+    private final XMLStreamReader reader;
+    private Document doc; //有converter的元素退回DOM方式
+
+    XStaxReader(XSchema schema, XMLStreamReader reader) {
+        this.schema = schema;
+        this.reader = reader;
+    }
+
+    //每个线程一个XMLInputFactory
+    static XMLStreamReader open(Reader in) {
+        try {
+            return inputFactory.get().createXMLStreamReader(in);
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //编码按xml声明自动识别
+    static XMLStreamReader open(InputStream in) {
+        try {
+            return inputFactory.get().createXMLStreamReader(in);
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    Object readRoot() {
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    XClass xClass = schema.getXClassByTag(tagName(reader));
+                    if (xClass == null) {
+                        return null;
+                    }
+                    return readChild(xClass);
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                reader.close();
+            } catch (XMLStreamException ignored) {
+            }
+        }
+    }
+
+    //以下给XRecordReader用：根元素只是容器，它的每个子元素是一条记录
+
+    //停在根元素的START_ELEMENT，没有根元素返回false
+    boolean enterRoot() throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //停在下一条记录的START_ELEMENT，根元素结束返回false
+    boolean nextRecord() throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    //当前记录的类型，没注册的跳过，当作根元素下未使用的子元素，返回null
+    XClass recordXClass(String rootTag) throws XMLStreamException {
+        String tag = tagName(reader);
+        XClass xClass = schema.getXClassByTag(tag);
+        if (xClass == null) {
+            skip(reader);
+            if (schema.unusedDiagnostics != null) {
+                schema.unusedDiagnostics.unusedChild(rootTag, tag);
+            }
+        }
+        return xClass;
+    }
+
+    Object readRecord(XClass xClass) throws XMLStreamException {
+        return readChild(xClass);
+    }
+
+    //每条记录一个Document，不同记录可以在不同线程里解码
+    Element readRecordDom() throws XMLStreamException {
+        doc = DomUtils.newDocument();
+        return readDom();
+    }
+
+    String currentTag() {
+        return tagName(reader);
+    }
+
+    int currentLine() {
+        return reader.getLocation().getLineNumber();
+    }
+
+    void close() {
+        try {
+            reader.close();
+        } catch (XMLStreamException ignored) {
+        }
+    }
+
+    //进入时在START_ELEMENT，返回时在对应的END_ELEMENT
+    //形参怎么匹配，怎么得出最终值都在编译时算好放在streamPlan里，这里不再按形参元数据判断
+    private Object readElement(XClass xClass) throws XMLStreamException {
+        if (xClass.needDom) {
+            return schema.fromXmlElementToObj(xClass, readDom()); //DOM方式里统计
+        }
+        XMetrics.ClassStats stats = xClass.stats; //统计直接写在这里，不多包一层调用，嵌套很深时不多占栈
+        long allocated = 0;
+        long start = 0;
+        if (stats != null) {
+            allocated = stats.allocated();
+            start = System.nanoTime();
+        }
+
+        XStreamPlan plan = xClass.streamPlan;
+        String tag = tagName(reader);
+        int size = plan.readSteps.length;
+        String[] attrValues = new String[size]; //按形参序号放
+        XDiagnostics diagnostics = schema.unusedDiagnostics; //null时不收集
+        List<String> unusedAttrs = null;
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String name = attrName(reader, i);
+            Integer slot = xClass.attrSlotMap.get(name);
+            if (slot != null) {
+                attrValues[slot] = reader.getAttributeValue(i);
+            } else if (diagnostics != null) {
+                if (unusedAttrs == null) {
+                    unusedAttrs = new ArrayList<>();
+                }
+                unusedAttrs.add(name);
+                unusedAttrs.add(reader.getAttributeValue(i));
+            }
+        }
+
+        Object[] params = new Object[size];
+        boolean[] found = new boolean[size];
+        for (int slot : plan.listSlots) {
+            params[slot] = new ArrayList<>();
+        }
+
+        List<String> unusedChildTags = null;
+        int[] childSlots = plan.childSlots;
+        int cur = 0; //按顺序匹配时，当前等待子元素的是childSlots[cur]
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+
+            String childTag = tagName(reader);
+            boolean used = false;
+            if (Character.isUpperCase(childTag.charAt(0))) { //注意这里的假设，假设构造器的形参都小写字母开头
+                int c;
+                if (xClass.paramNoOrder) {
+                    c = plan.matchNoOrder(childTag, found);
+                } else {
+                    c = plan.matchOrdered(cur, childTag);
+                    if (c < -1) {
+                        XParam xParam = xClass.xParamList.get(childSlots[-2 - c]);
+                        throw new XDecodeException(String.format("%s.%s 下一个元素是%s，不符合类型%s要求",
+                                tag, xParam.attr(), childTag, xParam.xClass.tag()));
+                    }
+                    cur = c < 0 ? childSlots.length : c;
+                }
+                if (c >= 0) {
+                    int slot = childSlots[c];
+                    XClass childXClass = plan.childTypes[c].resolveTag(childTag);
+                    if (plan.isList[slot]) {
+                        addTo(params[slot], readChild(childXClass));
+                    } else {
+                        found[slot] = true;
+                        params[slot] = readChild(childXClass);
+                        cur = c + 1;
+                    }
+                    used = true;
+                }
+
+            } else {
+                used = readExplicit(tag, xClass, params, found, childTag);
+            }
+
+            if (!used) {
+                skip(reader);
+                if (diagnostics != null) {
+                    if (unusedChildTags == null) {
+                        unusedChildTags = new ArrayList<>();
+                    }
+                    unusedChildTags.add(childTag);
+                }
+            }
+        }
+
+        XStreamPlan.ReadStep[] readSteps = plan.readSteps;
+        for (int i = 0; i < size; i++) {
+            params[i] = readSteps[i].read(tag, attrValues[i], params[i], found[i]);
+        }
+
+        if (unusedAttrs != null) {
+            for (int i = 0; i < unusedAttrs.size(); i += 2) {
+                diagnostics.unusedAttr(tag, unusedAttrs.get(i), unusedAttrs.get(i + 1));
+            }
+        }
+        if (unusedChildTags != null) {
+            for (String childTag : unusedChildTags) {
+                diagnostics.unusedChild(tag, childTag);
+            }
+        }
+
+        Object res = xClass.newInstance(params);
+        if (stats != null) {
+            stats.decoded(start, allocated);
+        }
+        return res;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean readExplicit(String tag, XClass xClass, Object[] params, boolean[] found,
+                                 String attrTag) throws XMLStreamException {
+        Integer slot = xClass.explicitSlotMap.get(attrTag);
+        if (slot == null) {
+            return false;
+        }
+        int i = slot;
+        XParam xParam = xClass.xParamList.get(i);
+        boolean isList = xClass.streamPlan.isList[i];
+
+        if (found[i]) {
+            throw new XDecodeException(String.format("%s<%s> 有多个，应该只有1个或0个", tag, attrTag));
+        }
+        found[i] = true;
+
+        List<Object> objs = isList ? (List<Object>) params[i] : new ArrayList<>();
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String childTag = tagName(reader);
+            XClass childXClass = schema.getXClassByTag(childTag);
+            if (childXClass == null) {
+                throw new XDecodeException(String.format("%s<%s> 没有注册", attrTag, childTag));
+            }
+            Object c = readChild(childXClass);
+            if (!xParam.xClass.rawClass.isInstance(c)) {
+                if (isList) {
+                    throw new XDecodeException(String.format("%s.%s 下子元素%s不符合类型%s要求", tag, attrTag, childTag, xParam.xClass.tag()));
+                } else {
+                    throw new XDecodeException(String.format("子元素%s<%s>里非%s类型", tag, attrTag, xParam.xClass.tag()));
+                }
+            }
+            objs.add(c);
+        }
+
+        if (!isList) {
+            if (objs.size() != 1) {
+                throw new XDecodeException(String.format("%s需要大小为%d,实际大小为%d", attrTag, 1, objs.size()));
+            } else {
+                params[i] = objs.get(0);
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addTo(Object list, Object c) {
+        ((List<Object>) list).add(c);
+    }
+
+    //等同fromXmlElementAssure，xClass已经按tag找好
+    //出错时异常往外传，每层在这里补上自己的tag，最里层补上行号；只加try不多一层调用
+    private Object readChild(XClass xClass) throws XMLStreamException {
+        Object c;
+        try {
+            c = readElement(xClass);
+        } catch (XDecodeException e) {
+            e.setLineIfAbsent(reader.getLocation().getLineNumber());
+            if (!xClass.needDom) { //DOM方式的路径里已经有自己
+                e.addParent(xClass.tag());
+            }
+            throw e;
+        }
+        if (c == null) { //只有converter的类型会这样
+            XDecodeException e = new XDecodeException("反序列化失败:<" + xClass.tag() + ">");
+            e.setLineIfAbsent(reader.getLocation().getLineNumber());
+            e.addParent(xClass.tag());
+            throw e;
+        }
+        return c;
+    }
+
+    //XValidator也用下面这几个
+    static void skip(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private Element readDom() throws XMLStreamException {
+        if (doc == null) {
+            doc = DomUtils.newDocument();
+        }
+        Element ele = doc.createElement(tagName(reader));
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            ele.setAttribute(attrName(reader, i), reader.getAttributeValue(i));
+        }
+
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            switch (reader.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT -> ele.appendChild(readDom());
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE ->
+                        ele.appendChild(doc.createTextNode(reader.getText()));
+            }
+        }
+        return ele;
+    }
+
+    static String tagName(XMLStreamReader reader) {
+        String prefix = reader.getPrefix();
+        if (prefix == null || prefix.isEmpty()) {
+            return reader.getLocalName();
+        }
+        return prefix + ":" + reader.getLocalName();
+    }
+
+    static String attrName(XMLStreamReader reader, int i) {
+        String prefix = reader.getAttributePrefix(i);
+        if (prefix == null || prefix.isEmpty()) {
+            return reader.getAttributeLocalName(i);
+        }
+        return prefix + ":" + reader.getAttributeLocalName(i);
+    }
+}
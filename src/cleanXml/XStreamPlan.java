@@ -0,0 +1,327 @@
+package cleanXml;
+
+import cleanXml.XData.XClass;
+import cleanXml.XData.XClassType;
+import cleanXml.XData.XParam;
+import cleanXml.XData.XType;
+
+import java.io.IOException;
+import java.util.List;
+
+//StAX方式读，流式写的执行计划，编译时按形参的类型，explicit，noOrder算好，needDom的类型没有
+//XStaxReader：哪些形参要先建list，哪些形参按顺序/noOrder匹配子元素，元素结束时每个形参一步得出最终值
+//XValidator跟XStaxReader共用这里的子元素匹配规则，一个构造对象，一个只检查
+//XStreamWriter：属性形参一组步，子元素形参一组步，按顺序执行
+final class XStreamPlan {
+    final boolean[] isList; //按形参序号
+    final int[] listSlots; //LIST形参，开始读元素时先建好list
+    final int[] childSlots; //按顺序或noOrder方式匹配子元素的形参
+    final XClass[] childTypes; //childSlots对应的形参类型
+    final boolean[] childRequired; //childSlots对应的形参是CLASS且没有默认值，按顺序匹配时不能跳过
+    final ReadStep[] readSteps; //按形参序号
+    final WriteStep[] attrSteps;
+    final WriteStep[] childSteps;
+
+    XStreamPlan(XClass xClass) {
+        List<XParam> xParamList = xClass.xParamList;
+        int size = xParamList.size();
+        isList = new boolean[size];
+        readSteps = new ReadStep[size];
+        int listCount = 0;
+        int childCount = 0;
+        int attrCount = 0;
+        for (int i = 0; i < size; i++) {
+            XParam xParam = xParamList.get(i);
+            isList[i] = xParam.xType == XType.LIST;
+            if (isList[i]) {
+                listCount++;
+            }
+            if (isChildParam(xParam)) {
+                childCount++;
+            }
+            if (xParam.isAttr()) {
+                attrCount++;
+            }
+            readSteps[i] = readStep(xClass, xParam);
+        }
+
+        listSlots = new int[listCount];
+        childSlots = new int[childCount];
+        childTypes = new XClass[childCount];
+        childRequired = new boolean[childCount];
+        attrSteps = new WriteStep[attrCount];
+        childSteps = new WriteStep[size - attrCount];
+        int l = 0;
+        int c = 0;
+        int a = 0;
+        int w = 0;
+        for (int i = 0; i < size; i++) {
+            XParam xParam = xParamList.get(i);
+            if (isList[i]) {
+                listSlots[l++] = i;
+            }
+            if (isChildParam(xParam)) {
+                childSlots[c] = i;
+                childTypes[c] = xParam.xClass;
+                childRequired[c++] = !isList[i] && !xParam.hasDefaultValue;
+            }
+            //DOM里属性和子元素是交错加的，但输出时属性都在前面，所以子元素放在后面写
+            if (xParam.isAttr()) {
+                attrSteps[a++] = writeStep(xClass, xParam);
+            } else {
+                childSteps[w++] = writeStep(xClass, xParam);
+            }
+        }
+    }
+
+    //按顺序匹配：从childSlots[cur]开始往后找能接受childTag的形参，返回它在childSlots里的位置
+    //都不能接受返回-1；中间要跳过一个不能跳过的形参时返回 -2-它的位置，调用方报错
+    //匹配上CLASS形参后下一个从c+1开始，LIST形参还从c开始
+    int matchOrdered(int cur, String childTag) {
+        for (int c = cur; c < childSlots.length; c++) {
+            if (childTypes[c].resolveTag(childTag) != null) {
+                return c;
+            }
+            if (childRequired[c]) {
+                return -2 - c;
+            }
+        }
+        return -1;
+    }
+
+    //noOrder时，子元素归第一个还能接受它的形参，跟按形参顺序挑第一个未使用的子元素结果一样；没有返回-1
+    int matchNoOrder(String childTag, boolean[] found) {
+        for (int c = 0; c < childSlots.length; c++) {
+            int slot = childSlots[c];
+            if ((isList[slot] || !found[slot]) && childTypes[c].resolveTag(childTag) != null) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    //是否是按顺序或noOrder方式匹配的子元素
+    static boolean isChildParam(XParam xParam) {
+        return (xParam.xType == XType.CLASS || xParam.xType == XType.LIST) &&
+                xParam.xClass.xClassType != XClassType.ENUM && !xParam.explicit;
+    }
+
+    private static ReadStep readStep(XClass xClass, XParam xParam) {
+        return switch (xParam.xType) {
+            case INT, LONG, FLOAT, DOUBLE, SHORT, BYTE, CHAR, BOOL, STR, ARRAY, VALUE_LIST -> new AttrRead(xParam);
+            case CLASS -> {
+                if (xParam.xClass.xClassType == XClassType.ENUM) {
+                    yield new EnumRead(xParam);
+                } else if (xParam.explicit) {
+                    yield new ChildRead(xParam, "缺少子元素%s<%s>");
+                } else if (xClass.paramNoOrder) {
+                    yield new ChildRead(xParam, "%s.%s 没找到类型为%s的子元素");
+                } else {
+                    yield new ChildRead(xParam, "%s.%s 无符合类型%s要求的子元素了");
+                }
+            }
+            case LIST -> new ListRead(xParam); //子元素读的时候已经检查过了
+        };
+    }
+
+    private static WriteStep writeStep(XClass xClass, XParam xParam) {
+        return switch (xParam.xType) {
+            case INT, LONG, FLOAT, DOUBLE, SHORT, BYTE, CHAR, BOOL -> new PrimitiveWrite(xClass, xParam);
+            case STR, ARRAY, VALUE_LIST -> new ValuesWrite(xClass, xParam);
+            case CLASS -> xParam.xClass.xClassType == XClassType.ENUM ? new ValuesWrite(xClass, xParam) : new ClassWrite(xClass, xParam);
+            case LIST -> new ListWrite(xClass, xParam);
+        };
+    }
+
+    //元素结束时，从属性值或已读到的子元素得出形参的最终值
+    abstract static class ReadStep {
+        final XParam xParam;
+        final String attr;
+
+        ReadStep(XParam xParam) {
+            this.xParam = xParam;
+            this.attr = xParam.attr();
+        }
+
+        //value是属性值，没有时为null；param是子元素读到的值，found表示子元素有了
+        abstract Object read(String tag, String value, Object param, boolean found);
+    }
+
+    abstract static class WriteStep {
+        final XParam xParam;
+        final String attr;
+        final String owner;
+
+        WriteStep(XClass xClass, XParam xParam) {
+            this.xParam = xParam;
+            this.attr = xParam.attr();
+            this.owner = xClass.name;
+        }
+
+        abstract void write(XStreamWriter w, Object obj) throws IOException;
+
+        //出错时才拼信息
+        final void requireNullable() {
+            if (!xParam.nullable()) {
+                throw new IllegalArgumentException(String.format("%s.%s需要不为null", owner, attr));
+            }
+        }
+    }
+
+    private static final class AttrRead extends ReadStep {
+        AttrRead(XParam xParam) {
+            super(xParam);
+        }
+
+        @Override
+        Object read(String tag, String value, Object param, boolean found) {
+            if (value != null) {
+                try {
+                    return xParam.parse(value);
+                } catch (IllegalArgumentException e) {
+                    throw new XDecodeException(String.format("%s[%s] = %s 格式不对: %s", tag, attr, value, e.getMessage()), e);
+                }
+            }
+            if (!xParam.hasDefaultValue) {
+                throw new XDecodeException(String.format("缺少属性%s[%s]", tag, attr));
+            }
+            return xParam.defaultValue;
+        }
+    }
+
+    private static final class EnumRead extends ReadStep {
+        EnumRead(XParam xParam) {
+            super(xParam);
+        }
+
+        @Override
+        Object read(String tag, String value, Object param, boolean found) {
+            if (value == null) {
+                throw new XDecodeException(String.format("%s[%s] 不存在", tag, attr));
+            }
+            try {
+                return xParam.xClass.getEnumObjAssure(value);
+            } catch (IllegalArgumentException e) {
+                throw new XDecodeException(e.getMessage(), e);
+            }
+        }
+    }
+
+    //没找到子元素时用默认值，missing是出错信息格式，参数为tag，attr，类型tag
+    private static final class ChildRead extends ReadStep {
+        private final String missing;
+
+        ChildRead(XParam xParam, String missing) {
+            super(xParam);
+            this.missing = missing;
+        }
+
+        @Override
+        Object read(String tag, String value, Object param, boolean found) {
+            if (found) {
+                return param;
+            }
+            if (!xParam.hasDefaultValue) {
+                throw new XDecodeException(String.format(missing, tag, attr, xParam.xClass.tag()));
+            }
+            return xParam.defaultValue;
+        }
+    }
+
+    private static final class ListRead extends ReadStep {
+        ListRead(XParam xParam) {
+            super(xParam);
+        }
+
+        @Override
+        Object read(String tag, String value, Object param, boolean found) {
+            return param;
+        }
+    }
+
+    //数字直接写进属性缓冲，不生成String
+    private static final class PrimitiveWrite extends WriteStep {
+        PrimitiveWrite(XClass xClass, XParam xParam) {
+            super(xClass, xParam);
+        }
+
+        @Override
+        void write(XStreamWriter w, Object obj) {
+            int start = w.attrValues.length();
+            xParam.append(w.attrValues, obj);
+            w.attribute(attr, start);
+        }
+    }
+
+    //STR，枚举用toString，数组和值列表逗号分隔
+    private static final class ValuesWrite extends WriteStep {
+        private final boolean values;
+
+        ValuesWrite(XClass xClass, XParam xParam) {
+            super(xClass, xParam);
+            values = xParam.xType == XType.ARRAY || xParam.xType == XType.VALUE_LIST;
+        }
+
+        @Override
+        void write(XStreamWriter w, Object obj) {
+            Object v = xParam.get(obj);
+            if (v == null) {
+                requireNullable();
+                return;
+            }
+            int start = w.attrValues.length();
+            if (values) {
+                xParam.appendValues(w.attrValues, v);
+            } else {
+                w.attrValues.append(v.toString());
+            }
+            w.attribute(attr, start);
+        }
+    }
+
+    private static final class ClassWrite extends WriteStep {
+        ClassWrite(XClass xClass, XParam xParam) {
+            super(xClass, xParam);
+        }
+
+        @Override
+        void write(XStreamWriter w, Object obj) throws IOException {
+            Object v = xParam.get(obj);
+            if (v == null) {
+                requireNullable();
+                return;
+            }
+            if (xParam.explicit) {
+                w.startElement(attr);
+            }
+            if (!w.write(v)) {
+                throw new IllegalArgumentException(String.format("%s.%s 类型为%s, 生成xml失败", owner, attr, v.getClass()));
+            }
+            if (xParam.explicit) {
+                w.endElement(attr);
+            }
+        }
+    }
+
+    //explicit时包一层<attr>，list为空时也写
+    private static final class ListWrite extends WriteStep {
+        ListWrite(XClass xClass, XParam xParam) {
+            super(xClass, xParam);
+        }
+
+        @Override
+        void write(XStreamWriter w, Object obj) throws IOException {
+            if (xParam.explicit) {
+                w.startElement(attr);
+            }
+            for (Object o : (List<?>) xParam.get(obj)) {
+                if (!w.write(o)) {
+                    throw new IllegalArgumentException(String.format("%s.%s 中元素类型类型为%s, 生成xml失败", owner, attr, o.getClass()));
+                }
+            }
+            if (xParam.explicit) {
+                w.endElement(attr);
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package cleanXml;
+
+import cleanXml.XData.XClass;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+//不建DOM，按XClass.streamPlan直接写到Writer
+//输出跟DomUtils.elementToString完全一样：属性按名字排序，缩进4个空格，转义规则同JDK的Transformer
+class XStreamWriter {
+    private static final String lineSeparator = System.lineSeparator();
+
+    private final XSchema schema;
+    private final Writer out;
+    private final boolean indent;
+
+    private int depth;
+    private boolean startOpen; //当前start tag还没写'>'
+    private String[] attrNames = new String[8];
+    private int[] attrStarts = new int[8]; //属性值在attrValues里的区间
+    private int[] attrEnds = new int[8];
+    final StringBuilder attrValues = new StringBuilder(); //当前start tag的所有属性值，数字直接写进来，不生成String
+    private int attrCount;
+    private char[] chars = new char[64];
+
+    XStreamWriter(XSchema schema, Writer out, boolean indent) {
+        this.schema = schema;
+        this.out = out;
+        this.indent = indent;
+    }
+
+    //返回是否成功，跟XSchema.toXmlElement一样
+    boolean write(Object obj) throws IOException {
+        XClass xClass = schema.getXClass(obj.getClass());
+        if (xClass == null) {
+            return false;
+        }
+
+        if (xClass.needDom) {
+            //converter只认DOM，这一层退回DOM方式
+            Element tmp = DomUtils.newDocument().createElement("tmp");
+            if (!schema.toXmlElement(obj, tmp)) {
+                return false;
+            }
+            for (Element e : DomUtils.getChildElements(tmp)) {
+                writeDom(e);
+            }
+            return true;
+        }
+
+        XMetrics.ClassStats stats = xClass.stats; //统计直接写在这里，不多包一层调用
+        long startNanos = stats != null ? System.nanoTime() : 0;
+        //属性和子元素各一组步，编译时按形参类型选好
+        XStreamPlan plan = xClass.streamPlan;
+        startElement(xClass.tag());
+        for (XStreamPlan.WriteStep step : plan.attrSteps) {
+            step.write(this, obj);
+        }
+        for (XStreamPlan.WriteStep step : plan.childSteps) {
+            step.write(this, obj);
+        }
+        endElement(xClass.tag());
+        if (stats != null) {
+            stats.encoded(startNanos);
+        }
+        return true;
+    }
+
+    //给XRecordWriter用，根元素只是容器，记录一条条用write写在里面
+    void startRoot(String tag) throws IOException {
+        startElement(tag);
+    }
+
+    void endRoot(String tag) throws IOException {
+        endElement(tag);
+    }
+
+    void writeDom(Element ele) throws IOException {
+        startElement(ele.getTagName());
+        NamedNodeMap attributes = ele.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr a = (Attr) attributes.item(i);
+            attribute(a.getName(), a.getValue());
+        }
+
+        NodeList childNodes = ele.getChildNodes();
+        boolean hasElement = false;
+        StringBuilder text = null;
+        for (int i = 0; i < childNodes.getLength(); i++) {
+            Node node = childNodes.item(i);
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                hasElement = true;
+            } else if (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE) {
+                if (text == null) {
+                    text = new StringBuilder();
+                }
+                text.append(node.getNodeValue());
+            }
+        }
+
+        if (!hasElement) {
+            if (text != null && text.length() > 0) { //只有文本，跟标签写在同一行
+                writeAttributes();
+                out.write('>');
+                startOpen = false;
+                writeText(text);
+                depth--;
+                out.write("</");
+                out.write(ele.getTagName());
+                out.write('>');
+                newLine();
+                return;
+            }
+        } else {
+            for (int i = 0; i < childNodes.getLength(); i++) {
+                Node node = childNodes.item(i);
+                if (node.getNodeType() == Node.ELEMENT_NODE) {
+                    writeDom((Element) node);
+                } else if (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE) {
+                    String s = node.getNodeValue();
+                    if (!s.isBlank()) { //混合内容，文本单独一行
+                        closeStart();
+                        writeIndent();
+                        writeText(s);
+                        newLine();
+                    }
+                }
+            }
+        }
+        endElement(ele.getTagName());
+    }
+
+    void startElement(String tag) throws IOException {
+        closeStart();
+        writeIndent();
+        out.write('<');
+        out.write(tag);
+        startOpen = true;
+        depth++;
+    }
+
+    private void attribute(String name, String value) {
+        int start = attrValues.length();
+        attrValues.append(value);
+        attribute(name, start);
+    }
+
+    //值已经写在attrValues的start之后
+    void attribute(String name, int start) {
+        if (attrCount == attrNames.length) {
+            attrNames = Arrays.copyOf(attrNames, attrCount * 2);
+            attrStarts = Arrays.copyOf(attrStarts, attrCount * 2);
+            attrEnds = Arrays.copyOf(attrEnds, attrCount * 2);
+        }
+        //DOM里属性按名字排序，这里插入排序
+        int i = attrCount;
+        while (i > 0 && attrNames[i - 1].compareTo(name) > 0) {
+            attrNames[i] = attrNames[i - 1];
+            attrStarts[i] = attrStarts[i - 1];
+            attrEnds[i] = attrEnds[i - 1];
+            i--;
+        }
+        attrNames[i] = name;
+        attrStarts[i] = start;
+        attrEnds[i] = attrValues.length();
+        attrCount++;
+    }
+
+    void endElement(String tag) throws IOException {
+        depth--;
+        if (startOpen) {
+            writeAttributes();
+            out.write("/>");
+            startOpen = false;
+        } else {
+            writeIndent();
+            out.write("</");
+            out.write(tag);
+            out.write('>');
+        }
+        newLine();
+    }
+
+    private void closeStart() throws IOException {
+        if (startOpen) {
+            writeAttributes();
+            out.write('>');
+            startOpen = false;
+            newLine();
+        }
+    }
+
+    private void writeAttributes() throws IOException {
+        for (int i = 0; i < attrCount; i++) {
+            out.write(' ');
+            out.write(attrNames[i]);
+            out.write("=\"");
+            writeEscaped(attrValues, attrStarts[i], attrEnds[i], true);
+            out.write('"');
+            attrNames[i] = null;
+        }
+        attrCount = 0;
+        attrValues.setLength(0);
+    }
+
+    private void writeText(CharSequence s) throws IOException {
+        writeEscaped(s, 0, s.length(), false);
+    }
+
+    private void newLine() throws IOException {
+        if (indent) {
+            out.write(lineSeparator);
+        }
+    }
+
+    private void writeIndent() throws IOException {
+        if (indent) {
+            for (int i = 0; i < depth; i++) {
+                out.write("    ");
+            }
+        }
+    }
+
+    private void writeEscaped(CharSequence s, int from, int end, boolean inAttr) throws IOException {
+        int start = from;
+        for (int i = from; i < end; i++) {
+            char c = s.charAt(i);
+            String rep = null;
+            switch (c) {
+                case '&' -> rep = "&amp;";
+                case '<' -> rep = "&lt;";
+                case '>' -> rep = "&gt;";
+                case '"' -> rep = inAttr ? "&quot;" : null;
+                case '\n' -> rep = inAttr ? "&#10;" : lineSeparator;
+                case '\t' -> rep = inAttr ? "&#9;" : null;
+                default -> {
+                    if (c < 0x20) {
+                        rep = "&#" + (int) c + ";";
+                    } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        rep = "&#" + Character.toCodePoint(c, s.charAt(i + 1)) + ";";
+                        flush(s, start, i);
+                        out.write(rep);
+                        i++;
+                        start = i + 1;
+                        continue;
+                    }
+                }
+            }
+
+            if (rep != null) {
+                flush(s, start, i);
+                out.write(rep);
+                start = i + 1;
+            }
+        }
+        flush(s, start, end);
+    }
+
+    //Writer.append(CharSequence, int, int)会生成子串，这里直接写字符区间
+    private void flush(CharSequence s, int start, int end) throws IOException {
+        int len = end - start;
+        if (len <= 0) {
+            return;
+        }
+        if (s instanceof String str) {
+            out.write(str, start, len);
+        } else if (s instanceof StringBuilder sb) {
+            if (chars.length < len) {
+                chars = new char[Math.max(len, chars.length * 2)];
+            }
+            sb.getChars(start, end, chars, 0);
+            out.write(chars, 0, len);
+        } else {
+            out.append(s, start, end);
+        }
+    }
+}
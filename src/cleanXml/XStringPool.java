@@ -0,0 +1,28 @@
+package cleanXml;
+
+//有上限的字符串intern表，按hash直接定位，冲突时新的覆盖旧的
+//不加锁：数组元素是引用，读写都是原子的，最坏情况是没复用上，结果总是equals的
+final class XStringPool {
+    private final String[] table;
+    private final int mask;
+
+    XStringPool(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        table = new String[size];
+        mask = size - 1;
+    }
+
+    String intern(String s) {
+        if (s == null) {
+            return null;
+        }
+        int h = s.hashCode();
+        int idx = (h ^ (h >>> 16)) & mask;
+        String cur = table[idx];
+        if (s.equals(cur)) {
+            return cur;
+        }
+        table[idx] = s;
+        return s;
+    }
+}
@@ -0,0 +1,10 @@
+package cleanXml;
+
+import org.w3c.dom.Element;
+
+//DOM方式解码时，按子树内容复用已经构造好的对象，见XReloader
+interface XSubtreeCache {
+    Object get(Element ele); //没有返回null
+
+    void put(Element ele, Object obj);
+}
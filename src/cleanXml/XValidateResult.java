@@ -0,0 +1,65 @@
+package cleanXml;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+//XSchema.validateAll的结果，只包含有问题的文件，按路径排序
+public class XValidateResult {
+    private final int fileCount;
+    private final Map<Path, List<XIssue>> issues;
+    private final int errorCount;
+    private final int warningCount;
+    private final int unvalidatedCount;
+
+    XValidateResult(int fileCount, Map<Path, List<XIssue>> issues) {
+        this.fileCount = fileCount;
+        this.issues = Collections.unmodifiableMap(new TreeMap<>(issues));
+        int errors = 0;
+        int warnings = 0;
+        int unvalidated = 0;
+        for (List<XIssue> list : issues.values()) {
+            for (XIssue issue : list) {
+                switch (issue.getLevel()) {
+                    case ERROR -> errors++;
+                    case WARNING -> warnings++;
+                    case UNVALIDATED -> unvalidated++;
+                }
+            }
+        }
+        this.errorCount = errors;
+        this.warningCount = warnings;
+        this.unvalidatedCount = unvalidated;
+    }
+
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    public Map<Path, List<XIssue>> getIssues() {
+        return issues;
+    }
+
+    public List<XIssue> getIssues(Path path) {
+        return issues.getOrDefault(path, List.of());
+    }
+
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    public int getWarningCount() {
+        return warningCount;
+    }
+
+    //有converter没有校验的元素个数
+    public int getUnvalidatedCount() {
+        return unvalidatedCount;
+    }
+
+    public boolean hasErrors() {
+        return errorCount > 0;
+    }
+}
@@ -0,0 +1,215 @@
+package cleanXml;
+
+import cleanXml.XData.XClass;
+import cleanXml.XData.XParam;
+import cleanXml.XData.XType;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static cleanXml.XStaxReader.attrName;
+import static cleanXml.XStaxReader.skip;
+import static cleanXml.XStaxReader.tagName;
+
+//只校验不构造：按XStaxReader同样的规则匹配属性和子元素，不调用构造器，也不生成对象
+//出错不抛异常，所有错误和未使用的属性，子元素都记下来，带行列号
+//子元素匹配规则和缺少形参时的处理都用XStreamPlan，跟XStaxReader一致
+//有converter的元素格式由converter决定，这里跳过不检查，记一条UNVALIDATED
+class XValidator {
+    private final XSchema schema;
+    private final XMLStreamReader reader;
+    private final List<XIssue> issues = new ArrayList<>();
+
+    XValidator(XSchema schema, XMLStreamReader reader) {
+        this.schema = schema;
+        this.reader = reader;
+    }
+
+    List<XIssue> validateRoot() {
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    XClass xClass = schema.getXClassByTag(tagName(reader));
+                    if (xClass == null) {
+                        Location loc = reader.getLocation();
+                        error(loc.getLineNumber(), loc.getColumnNumber(), String.format("根元素%s没有注册", tagName(reader)));
+                    } else {
+                        validateElement(xClass);
+                    }
+                    break;
+                }
+            }
+        } catch (XMLStreamException e) {
+            Location loc = e.getLocation();
+            if (loc != null) {
+                error(loc.getLineNumber(), loc.getColumnNumber(), e.getMessage());
+            } else {
+                error(-1, -1, e.getMessage());
+            }
+        } finally {
+            try {
+                reader.close();
+            } catch (XMLStreamException ignored) {
+            }
+        }
+        return issues;
+    }
+
+    private void error(int line, int column, String message) {
+        issues.add(new XIssue(XIssue.Level.ERROR, line, column, message));
+    }
+
+    private void warning(int line, int column, String message) {
+        issues.add(new XIssue(XIssue.Level.WARNING, line, column, message));
+    }
+
+    //进入时在START_ELEMENT，返回时在对应的END_ELEMENT
+    private void validateElement(XClass xClass) throws XMLStreamException {
+        Location loc = reader.getLocation();
+        int line = loc.getLineNumber();
+        int column = loc.getColumnNumber();
+        String tag = tagName(reader);
+        XStreamPlan plan = xClass.streamPlan;
+        if (plan == null) { //needDom
+            skip(reader);
+            issues.add(new XIssue(XIssue.Level.UNVALIDATED, line, column, String.format("%s 有converter，没有校验", tag)));
+            return;
+        }
+
+        List<XParam> xParamList = xClass.xParamList;
+        int size = xParamList.size();
+        boolean[] found = new boolean[size]; //属性或子元素有了
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String name = attrName(reader, i);
+            Integer slot = xClass.attrSlotMap.get(name);
+            if (slot == null) {
+                warning(line, column, String.format("%s[%s] = %s 未使用", tag, name, reader.getAttributeValue(i)));
+                continue;
+            }
+
+            found[slot] = true;
+            try {
+                plan.readSteps[slot].read(tag, reader.getAttributeValue(i), null, false);
+            } catch (XDecodeException e) {
+                error(line, column, e.getMessage());
+            }
+        }
+
+        int[] childSlots = plan.childSlots;
+        boolean[] errored = new boolean[size]; //匹配子元素时已经报过错
+        int cur = 0;
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+
+            Location childLoc = reader.getLocation();
+            String childTag = tagName(reader);
+            boolean used = false;
+            if (Character.isUpperCase(childTag.charAt(0))) {
+                int c;
+                if (xClass.paramNoOrder) {
+                    c = plan.matchNoOrder(childTag, found);
+                } else {
+                    c = plan.matchOrdered(cur, childTag);
+                    while (c < -1) { //XStaxReader在这里抛异常，这里记下错误，跳过这个形参接着匹配
+                        int slot = childSlots[-2 - c];
+                        XParam xParam = xParamList.get(slot);
+                        errored[slot] = true;
+                        error(childLoc.getLineNumber(), childLoc.getColumnNumber(),
+                                String.format("%s.%s 下一个元素是%s，不符合类型%s要求",
+                                        tag, xParam.attr(), childTag, xParam.xClass.tag()));
+                        c = plan.matchOrdered(-1 - c, childTag);
+                    }
+                    cur = c < 0 ? childSlots.length : c;
+                }
+                if (c >= 0) {
+                    int slot = childSlots[c];
+                    found[slot] = true;
+                    if (!plan.isList[slot]) {
+                        cur = c + 1;
+                    }
+                    validateElement(plan.childTypes[c].resolveTag(childTag));
+                    used = true;
+                }
+
+            } else {
+                used = validateExplicit(tag, xClass, found, errored, childTag);
+            }
+
+            if (!used) {
+                skip(reader);
+                warning(childLoc.getLineNumber(), childLoc.getColumnNumber(), String.format("%s<%s> 未使用", tag, childTag));
+            }
+        }
+
+        //跟XStaxReader一样，缺少的形参由readSteps给出默认值或报错
+        for (int i = 0; i < size; i++) {
+            if (found[i] || errored[i] || plan.isList[i]) {
+                continue;
+            }
+            try {
+                plan.readSteps[i].read(tag, null, null, false);
+            } catch (XDecodeException e) {
+                error(line, column, e.getMessage());
+            }
+        }
+    }
+
+    private boolean validateExplicit(String tag, XClass xClass, boolean[] found, boolean[] errored,
+                                     String attrTag) throws XMLStreamException {
+        Integer slot = xClass.explicitSlotMap.get(attrTag);
+        if (slot == null) {
+            return false;
+        }
+        int i = slot;
+        XParam xParam = xClass.xParamList.get(i);
+        Location loc = reader.getLocation();
+
+        if (found[i]) {
+            errored[i] = true;
+            error(loc.getLineNumber(), loc.getColumnNumber(), String.format("%s<%s> 有多个，应该只有1个或0个", tag, attrTag));
+            skip(reader);
+            return true;
+        }
+        found[i] = true;
+
+        int count = 0;
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            Location childLoc = reader.getLocation();
+            String childTag = tagName(reader);
+            count++;
+            XClass childXClass = schema.getXClassByTag(childTag);
+            if (childXClass == null) {
+                errored[i] = true;
+                error(childLoc.getLineNumber(), childLoc.getColumnNumber(), String.format("%s<%s> 没有注册", attrTag, childTag));
+                skip(reader);
+                continue;
+            }
+            if (!xParam.xClass.rawClass.isAssignableFrom(childXClass.rawClass)) {
+                errored[i] = true;
+                if (xParam.xType == XType.LIST) {
+                    error(childLoc.getLineNumber(), childLoc.getColumnNumber(),
+                            String.format("%s.%s 下子元素%s不符合类型%s要求", tag, attrTag, childTag, xParam.xClass.tag()));
+                } else {
+                    error(childLoc.getLineNumber(), childLoc.getColumnNumber(),
+                            String.format("子元素%s<%s>里非%s类型", tag, attrTag, xParam.xClass.tag()));
+                }
+            }
+            validateElement(childXClass);
+        }
+
+        if (xParam.xType == XType.CLASS && count != 1) {
+            errored[i] = true;
+            error(loc.getLineNumber(), loc.getColumnNumber(), String.format("%s需要大小为%d,实际大小为%d", attrTag, 1, count));
+        }
+        return true;
+    }
+}